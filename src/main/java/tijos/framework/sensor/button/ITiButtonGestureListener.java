@@ -0,0 +1,27 @@
+package tijos.framework.sensor.button;
+
+/*
+ * Gesture listener for TiButton 
+ * 
+ */
+public interface ITiButtonGestureListener {
+	/**
+	 * the event is triggered when the clicks are finished
+	 * @param button the button which is clicked
+	 * @param count click count, 1:click, 2:double click, N:N clicks
+	 */
+	public void onClick(TiButton button, int count);
+
+	/**
+	 * the event is triggered when the button is pressed for the long press time
+	 * @param button the button which is long pressed
+	 */
+	public void onLongPress(TiButton button);
+
+	/**
+	 * the event is triggered periodically when the button is held after long press
+	 * @param button the button which is held
+	 * @param count repeat count, start from 1
+	 */
+	public void onHoldRepeat(TiButton button, int count);
+}
@@ -0,0 +1,21 @@
+package tijos.framework.sensor.button;
+
+/*
+ * Event listener for TiKeypad 
+ * 
+ */
+public interface ITiKeypadEventListener {
+	/**
+	 * the event is triggered when the key is pressed
+	 * @param keypad the keypad which key is pressed
+	 * @param key key index, row * column number + column
+	 */
+	public void onPressed(TiKeypad keypad, int key);
+
+	/**
+	 * the event is triggered when the key is released
+	 * @param keypad the keypad which key is released
+	 * @param key key index, row * column number + column
+	 */
+	public void onReleased(TiKeypad keypad, int key);
+}
@@ -5,11 +5,30 @@ import java.io.IOException;
 import tijos.framework.devicecenter.TiGPIO;
 import tijos.framework.eventcenter.ITiEvent;
 import tijos.framework.eventcenter.ITiEventListener;
-import tijos.framework.eventcenter.TiEventService;
 import tijos.framework.eventcenter.TiEventType;
 import tijos.framework.eventcenter.TiGPIOEvent;
+import tijos.framework.sensor.common.ITiPinPollerListener;
+import tijos.framework.sensor.common.TiGPIOEventDispatcher;
+import tijos.framework.sensor.common.TiPinPoller;
+
+public class TiButton implements ITiEventListener, ITiPinPollerListener {
+	/**
+	 * Gesture state, idle
+	 */
+	private static final int GESTURE_IDLE = 0;
+	/**
+	 * Gesture state, pressed and waiting for long press
+	 */
+	private static final int GESTURE_PRESSED = 1;
+	/**
+	 * Gesture state, released and waiting for the next click
+	 */
+	private static final int GESTURE_RELEASED = 2;
+	/**
+	 * Gesture state, long pressed and holding
+	 */
+	private static final int GESTURE_HOLD = 3;
 
-public class TiButton implements ITiEventListener {
 	/**
 	 * TiButton pin id
 	 */
@@ -26,10 +45,60 @@ public class TiButton implements ITiEventListener {
 	 * TiGPIO object
 	 */
 	private TiGPIO gpioObj;
+	/**
+	 * TiPinPoller object, null:edge event mode
+	 */
+	private TiPinPoller pollerObj = null;
+	/**
+	 * Pin event enabled flag
+	 */
+	private boolean eventEnabled;
 	/**
 	 * Event listener
 	 */
 	private ITiButtonEventListener buttonLc = null;
+	/**
+	 * Gesture listener
+	 */
+	private ITiButtonGestureListener gestureLc = null;
+	/**
+	 * Gesture state
+	 */
+	private int gestureState;
+	/**
+	 * Gesture press time, unit:us
+	 */
+	private long pressTime;
+	/**
+	 * Gesture click count
+	 */
+	private int clickCount;
+	/**
+	 * Gesture hold repeat count
+	 */
+	private int repeatCount;
+	/**
+	 * Max time between clicks, unit:ms
+	 */
+	private int clickGap;
+	/**
+	 * Long press time, unit:ms
+	 */
+	private int longPressTime;
+	/**
+	 * Hold repeat interval, unit:ms, 0:no repeat
+	 */
+	private int repeatInterval;
+	/**
+	 * Max click count, the clicks are reported at once when reached, 0:no
+	 * limit
+	 */
+	private int clickMax;
+
+	/**
+	 * Gesture timer node of the shared timer wheel
+	 */
+	private TiButtonTimerNode timerNode;
 
 	@Override
 	public TiEventType getType() {
@@ -41,32 +110,125 @@ public class TiButton implements ITiEventListener {
 		synchronized (this) {
 			TiGPIOEvent event = (TiGPIOEvent) evt;
 			if (event.getPin() == buttonPin) {
+				boolean pressed;
 				switch (event.getEvent()) {
 				case TiGPIO.EVT_FALLINGEDGE:
-					eventTime = event.getTime();
-					if (highActive) {
-						if (buttonLc != null)
-							buttonLc.onReleased(this);
-					}
-					else {
-						if (buttonLc != null)
-							buttonLc.onPressed(this);
-					}
+					pressed = !highActive;
 					break;
 				case TiGPIO.EVT_RISINGEDGE:
-					eventTime = event.getTime();
-					if (highActive) {
-						if (buttonLc != null)
-							buttonLc.onPressed(this);
-					}
-					else {
-						if (buttonLc != null)
-							buttonLc.onReleased(this);
-					}
+					pressed = highActive;
 					break;
 				default:
-					break;
+					return;
 				}
+				eventTime = event.getTime();
+				stateChanged(pressed);
+			}
+		}
+	}
+
+	@Override
+	public void onPinChanged(int pin, int level, long time) {
+		synchronized (this) {
+			if (pin != buttonPin || pollerObj == null)
+				return;
+			eventTime = time * 1000;
+			stateChanged((level != 0) == highActive);
+		}
+	}
+
+	/**
+	 * Report the pressed or released state to the listeners
+	 * 
+	 * @param pressed
+	 *            true:pressed, false:released[IN]
+	 */
+	private void stateChanged(boolean pressed) {
+		if (buttonLc != null) {
+			if (pressed)
+				buttonLc.onPressed(this);
+			else
+				buttonLc.onReleased(this);
+		}
+		if (gestureLc != null) {
+			if (pressed)
+				gesturePressed();
+			else
+				gestureReleased();
+		}
+	}
+
+	/**
+	 * Gesture state machine, button pressed
+	 */
+	private void gesturePressed() {
+		if (gestureState == GESTURE_IDLE)
+			clickCount = 0;
+		else if (gestureState != GESTURE_RELEASED)
+			return;
+		gestureState = GESTURE_PRESSED;
+		pressTime = eventTime;
+		TiButtonTimer.getInstance().schedule(timerNode, longPressTime);
+	}
+
+	/**
+	 * Gesture state machine, button released
+	 */
+	private void gestureReleased() {
+		TiButtonTimer timer = TiButtonTimer.getInstance();
+		if (gestureState == GESTURE_HOLD) {
+			timer.cancel(timerNode);
+			gestureState = GESTURE_IDLE;
+			return;
+		}
+		if (gestureState != GESTURE_PRESSED)
+			return;
+		if (eventTime - pressTime >= (long) longPressTime * 1000) {
+			// the timer tick is later than the edge time
+			timer.cancel(timerNode);
+			gestureState = GESTURE_IDLE;
+			gestureLc.onLongPress(this);
+			return;
+		}
+		clickCount++;
+		if (clickMax > 0 && clickCount >= clickMax) {
+			timer.cancel(timerNode);
+			gestureState = GESTURE_IDLE;
+			gestureLc.onClick(this, clickCount);
+			return;
+		}
+		gestureState = GESTURE_RELEASED;
+		timer.schedule(timerNode, clickGap);
+	}
+
+	/**
+	 * Gesture state machine, timeout from the shared timer wheel
+	 */
+	void gestureTimeout() {
+		synchronized (this) {
+			ITiButtonGestureListener lc = gestureLc;
+			if (lc == null || !TiButtonTimer.getInstance().isCurrent(timerNode))
+				return;
+			switch (gestureState) {
+			case GESTURE_PRESSED:
+				gestureState = GESTURE_HOLD;
+				repeatCount = 0;
+				if (repeatInterval > 0)
+					TiButtonTimer.getInstance().schedule(timerNode, repeatInterval);
+				lc.onLongPress(this);
+				break;
+			case GESTURE_HOLD:
+				repeatCount++;
+				if (repeatInterval > 0)
+					TiButtonTimer.getInstance().schedule(timerNode, repeatInterval);
+				lc.onHoldRepeat(this, repeatCount);
+				break;
+			case GESTURE_RELEASED:
+				gestureState = GESTURE_IDLE;
+				lc.onClick(this, clickCount);
+				break;
+			default:
+				break;
 			}
 		}
 	}
@@ -101,6 +263,12 @@ public class TiButton implements ITiEventListener {
 		buttonPin = signalPinID;
 		highActive = highLevel;
 		eventTime = -1;
+		timerNode = new TiButtonTimerNode(this);
+		gestureState = GESTURE_IDLE;
+		clickGap = 300;
+		longPressTime = 800;
+		repeatInterval = 200;
+		clickMax = 0;
 	}
 
 	/**
@@ -112,20 +280,119 @@ public class TiButton implements ITiEventListener {
 	 */
 	public void setEventListener(ITiButtonEventListener lc) throws IOException {
 		synchronized (this) {
-			if (buttonLc == null && lc != null) {
-				gpioObj.setEventParameters(buttonPin, TiGPIO.EVT_BOTHEDGE, 10000);// >=10ms
-				TiEventService.getInstance().addListener(this);
-				buttonLc = lc;
-			} else if (buttonLc != null && lc == null) {
-				gpioObj.setEventParameters(buttonPin, TiGPIO.EVT_NONE, 0);
-				TiEventService.getInstance().unregisterEvent(this);
-				buttonLc = null;
-			} else {
-			}
+			eventEnable(lc != null || gestureLc != null);
+			buttonLc = lc;
 		}
 		return;
 	}
 
+	/**
+	 * Set the TiButton gesture listener, the gestures are timed by the edge
+	 * time and one timer wheel shared by all buttons
+	 * 
+	 * @param lc
+	 *            listener or null[IN]
+	 * @throws IOException
+	 */
+	public void setGestureListener(ITiButtonGestureListener lc) throws IOException {
+		synchronized (this) {
+			eventEnable(buttonLc != null || lc != null);
+			if (lc == null)
+				TiButtonTimer.getInstance().cancel(timerNode);
+			if (gestureLc == null)
+				gestureState = GESTURE_IDLE;
+			gestureLc = lc;
+		}
+		return;
+	}
+
+	/**
+	 * Set the gesture timing, default:clickGap=300ms, longPress=800ms,
+	 * repeat=200ms
+	 * 
+	 * @param clickGap
+	 *            max time between clicks, unit:ms[IN]
+	 * @param longPress
+	 *            long press time, unit:ms[IN]
+	 * @param repeat
+	 *            hold repeat interval, unit:ms, 0:no repeat[IN]
+	 */
+	public void setGestureTiming(int clickGap, int longPress, int repeat) {
+		if (clickGap <= 0 || longPress <= 0 || repeat < 0)
+			throw new IllegalArgumentException("invalid timing.");
+		synchronized (this) {
+			this.clickGap = clickGap;
+			longPressTime = longPress;
+			repeatInterval = repeat;
+		}
+	}
+
+	/**
+	 * Set the max click count, the clicks are reported at once when reached
+	 * without waiting for the click gap, default:0
+	 * 
+	 * @param max
+	 *            max click count, 0:no limit[IN]
+	 */
+	public void setMaxClicks(int max) {
+		if (max < 0)
+			throw new IllegalArgumentException("invalid count.");
+		synchronized (this) {
+			clickMax = max;
+		}
+	}
+
+	/**
+	 * Set the polled mode, the pin is sampled and debounced by the poller
+	 * instead of the edge events, the event time is the sample time in polled
+	 * mode,<br>
+	 * the sample time is taken from the system clock and the edge time from
+	 * the event clock, so the gesture in progress is dropped and the event
+	 * time is cleared when the mode is changed
+	 * 
+	 * @param poller
+	 *            TiPinPoller object, null:edge event mode[IN]
+	 * @throws IOException
+	 */
+	public void setPolledMode(TiPinPoller poller) throws IOException {
+		synchronized (this) {
+			if (poller == pollerObj)
+				return;
+			boolean enable = eventEnabled;
+			eventEnable(false);
+			pollerObj = poller;
+			TiButtonTimer.getInstance().cancel(timerNode);
+			gestureState = GESTURE_IDLE;
+			eventTime = -1;
+			eventEnable(enable);
+		}
+	}
+
+	/**
+	 * Enable or disable the pin event
+	 * 
+	 * @param enable
+	 *            true:enable, false:disable[IN]
+	 * @throws IOException
+	 */
+	private void eventEnable(boolean enable) throws IOException {
+		if (enable == eventEnabled)
+			return;
+		if (pollerObj != null) {
+			if (enable)
+				pollerObj.attach(buttonPin, this);
+			else
+				pollerObj.detach(buttonPin);
+		} else if (enable) {
+			gpioObj.setEventParameters(buttonPin, TiGPIO.EVT_BOTHEDGE, 10000);// >=10ms
+			TiGPIOEventDispatcher.getInstance().attach(buttonPin, this);
+		} else {
+			gpioObj.setEventParameters(buttonPin, TiGPIO.EVT_NONE, 0);
+			TiGPIOEventDispatcher.getInstance().detach(buttonPin, this);
+		}
+		eventEnabled = enable;
+	}
+
 	/**
 	 * Gets the event occur time, unit:us
 	 * 
@@ -0,0 +1,194 @@
+package tijos.framework.sensor.button;
+
+/**
+ * 
+ * Hashed timer wheel shared by all buttons, each button has at most one
+ * pending timeout and all timeouts are driven by one thread, which is started
+ * on demand and ends when the wheel is empty
+ */
+class TiButtonTimer {
+	/**
+	 * Tick time, unit:ms
+	 */
+	private static final int TICK = 10;
+	/**
+	 * Wheel slot number, power of 2
+	 */
+	private static final int WHEEL_SIZE = 64;
+
+	/**
+	 * Shared instance
+	 */
+	private static TiButtonTimer instance = null;
+
+	/**
+	 * Wheel slots, list head of nodes
+	 */
+	private TiButtonTimerNode[] wheel;
+	/**
+	 * Start time of tick 0, unit:ms
+	 */
+	private long baseTime;
+	/**
+	 * Last tick processed
+	 */
+	private long lastTick;
+	/**
+	 * Pending timeout number
+	 */
+	private int pendingCount;
+	/**
+	 * Expired nodes of one pass
+	 */
+	private TiButtonTimerNode[] expired;
+	/**
+	 * Timer thread
+	 */
+	private Thread timerThread = null;
+
+	/**
+	 * Gets the shared instance
+	 * 
+	 * @return TiButtonTimer object
+	 */
+	static synchronized TiButtonTimer getInstance() {
+		if (instance == null)
+			instance = new TiButtonTimer();
+		return instance;
+	}
+
+	/**
+	 * TiButtonTimer initialization
+	 */
+	private TiButtonTimer() {
+		wheel = new TiButtonTimerNode[WHEEL_SIZE];
+		expired = new TiButtonTimerNode[8];
+		baseTime = System.currentTimeMillis();
+		lastTick = 0;
+	}
+
+	/**
+	 * Schedule the timeout of the button, the pending one is replaced
+	 * 
+	 * @param node
+	 *            timer node of the button[IN]
+	 * @param delay
+	 *            delay time, unit:ms[IN]
+	 */
+	synchronized void schedule(TiButtonTimerNode node, int delay) {
+		unlink(node);
+		long now = System.currentTimeMillis() - baseTime;
+		if (pendingCount == 0)
+			lastTick = now / TICK;
+		long tick = (now + delay + TICK - 1) / TICK;
+		if (tick <= lastTick)
+			tick = lastTick + 1;
+		int slot = (int) (tick & (WHEEL_SIZE - 1));
+		node.tick = tick;
+		node.slot = slot;
+		node.prev = null;
+		node.next = wheel[slot];
+		if (wheel[slot] != null)
+			wheel[slot].prev = node;
+		wheel[slot] = node;
+		node.seq++;
+		pendingCount++;
+		if (timerThread == null) {
+			timerThread = new Thread(new Runnable() {
+				public void run() {
+					timerLoop();
+				}
+			});
+			timerThread.start();
+		}
+	}
+
+	/**
+	 * Cancel the timeout of the button
+	 * 
+	 * @param node
+	 *            timer node of the button[IN]
+	 */
+	synchronized void cancel(TiButtonTimerNode node) {
+		unlink(node);
+		node.seq++;
+	}
+
+	/**
+	 * Check if the expired timeout is still the current one of the button
+	 * 
+	 * @param node
+	 *            timer node of the button[IN]
+	 * @return true:current, false:rescheduled or cancelled
+	 */
+	synchronized boolean isCurrent(TiButtonTimerNode node) {
+		return node.slot < 0 && node.fired == node.seq;
+	}
+
+	/**
+	 * Remove the node from its slot
+	 * 
+	 * @param node
+	 *            timer node of the button[IN]
+	 */
+	private void unlink(TiButtonTimerNode node) {
+		if (node.slot < 0)
+			return;
+		if (node.prev != null)
+			node.prev.next = node.next;
+		else
+			wheel[node.slot] = node.next;
+		if (node.next != null)
+			node.next.prev = node.prev;
+		node.prev = null;
+		node.next = null;
+		node.slot = -1;
+		pendingCount--;
+	}
+
+	/**
+	 * Advance the wheel every tick and call the expired buttons out of the
+	 * wheel lock until the wheel is empty
+	 */
+	private void timerLoop() {
+		for (;;) {
+			int count = 0;
+			synchronized (this) {
+				if (pendingCount == 0) {
+					timerThread = null;
+					return;
+				}
+				try {
+					wait(TICK);
+				} catch (InterruptedException e) {
+					timerThread = null;
+					return;
+				}
+				long tick = (System.currentTimeMillis() - baseTime) / TICK;
+				while (lastTick < tick) {
+					lastTick++;
+					TiButtonTimerNode node = wheel[(int) (lastTick & (WHEEL_SIZE - 1))];
+					while (node != null) {
+						TiButtonTimerNode next = node.next;
+						if (node.tick <= lastTick) {
+							unlink(node);
+							node.fired = node.seq;
+							if (count >= expired.length) {
+								TiButtonTimerNode[] list = new TiButtonTimerNode[expired.length * 2];
+								System.arraycopy(expired, 0, list, 0, count);
+								expired = list;
+							}
+							expired[count++] = node;
+						}
+						node = next;
+					}
+				}
+			}
+			for (int i = 0; i < count; i++) {
+				TiButtonTimerNode node = expired[i];
+				expired[i] = null;
+				node.button.gestureTimeout();
+			}
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package tijos.framework.sensor.button;
+
+/**
+ * 
+ * Timer wheel node of a button, the links and the timeout state are managed
+ * by TiButtonTimer only
+ */
+class TiButtonTimerNode {
+	/**
+	 * Button of the node
+	 */
+	TiButton button;
+	/**
+	 * Previous node in the slot
+	 */
+	TiButtonTimerNode prev;
+	/**
+	 * Next node in the slot
+	 */
+	TiButtonTimerNode next;
+	/**
+	 * Wheel slot, -1:not scheduled
+	 */
+	int slot = -1;
+	/**
+	 * Deadline tick
+	 */
+	long tick;
+	/**
+	 * Sequence of schedule and cancel
+	 */
+	int seq;
+	/**
+	 * Sequence expired
+	 */
+	int fired = -1;
+
+	/**
+	 * TiButtonTimerNode initialization
+	 * 
+	 * @param owner
+	 *            TiButton object[IN]
+	 */
+	TiButtonTimerNode(TiButton owner) {
+		button = owner;
+	}
+}
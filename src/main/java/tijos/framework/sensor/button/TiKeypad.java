@@ -0,0 +1,322 @@
+package tijos.framework.sensor.button;
+
+import java.io.IOException;
+
+import tijos.framework.devicecenter.TiGPIO;
+
+/**
+ * 
+ * Matrix keypad, the rows are driven low one by one and the columns are read
+ * with pull up, each key is debounced by a 2 bits vertical counter packed in
+ * int words, a key changes after 4 equal scans
+ */
+public class TiKeypad {
+	/**
+	 * TiKeypad row pin ids
+	 */
+	private int[] rowPins;
+	/**
+	 * TiKeypad column pin ids
+	 */
+	private int[] colPins;
+	/**
+	 * Scan interval, unit:ms
+	 */
+	private int scanInterval;
+	/**
+	 * Debounced key state bits, 1:pressed
+	 */
+	private int[] keyState;
+	/**
+	 * Raw key sample bits of the current scan
+	 */
+	private int[] keySample;
+	/**
+	 * Vertical counter bit 0
+	 */
+	private int[] keyCount0;
+	/**
+	 * Vertical counter bit 1
+	 */
+	private int[] keyCount1;
+	/**
+	 * Changed keys of the current scan
+	 */
+	private int[] evtKey;
+	/**
+	 * Changed key states of the current scan, true:pressed
+	 */
+	private boolean[] evtPressed;
+	/**
+	 * Event time of the last key change, unit:ms
+	 */
+	private long eventTime;
+	/**
+	 * Number of failed scans
+	 */
+	private int errorCount;
+	/**
+	 * Scan thread
+	 */
+	private Thread scanThread = null;
+	/**
+	 * TiGPIO object
+	 */
+	private TiGPIO gpioObj;
+	/**
+	 * Event listener
+	 */
+	private ITiKeypadEventListener keypadLc = null;
+
+	/**
+	 * TiKeypad initialization, default:scan interval=5ms
+	 * 
+	 * @param gpio
+	 *            TiGPIO object[IN]
+	 * @param rowPinIDs
+	 *            row pin ids, open drain output[IN]
+	 * @param colPinIDs
+	 *            column pin ids, pull up input[IN]
+	 * @throws IOException
+	 */
+	public TiKeypad(TiGPIO gpio, int[] rowPinIDs, int[] colPinIDs) throws IOException {
+		if (rowPinIDs.length == 0 || colPinIDs.length == 0)
+			throw new IllegalArgumentException("invalid pins.");
+		for (int i = 0; i < rowPinIDs.length; i++) {
+			gpio.setWorkMode(rowPinIDs[i], TiGPIO.OUTPUT_OD);
+			gpio.writePin(rowPinIDs[i], 1);
+		}
+		for (int i = 0; i < colPinIDs.length; i++)
+			gpio.setWorkMode(colPinIDs[i], TiGPIO.INPUT_PULLUP);
+		gpioObj = gpio;
+		rowPins = new int[rowPinIDs.length];
+		System.arraycopy(rowPinIDs, 0, rowPins, 0, rowPins.length);
+		colPins = new int[colPinIDs.length];
+		System.arraycopy(colPinIDs, 0, colPins, 0, colPins.length);
+		int words = (rowPins.length * colPins.length + 31) / 32;
+		keyState = new int[words];
+		keySample = new int[words];
+		keyCount0 = new int[words];
+		keyCount1 = new int[words];
+		evtKey = new int[rowPins.length * colPins.length];
+		evtPressed = new boolean[evtKey.length];
+		scanInterval = 5;
+		eventTime = -1;
+	}
+
+	/**
+	 * Scan the matrix periodically until the listener is removed, a failed
+	 * scan is counted and dropped, the events are reported outside the lock
+	 */
+	private void scanLoop() {
+		long nextTime = System.currentTimeMillis();
+		try {
+			for (;;) {
+				int count;
+				ITiKeypadEventListener lc;
+				synchronized (this) {
+					try {
+						for (;;) {
+							if (keypadLc == null) {
+								scanThread = null;
+								notifyAll();
+								return;
+							}
+							long timeLeft = nextTime - System.currentTimeMillis();
+							if (timeLeft <= 0)
+								break;
+							wait(timeLeft);
+						}
+					} catch (InterruptedException e) {
+						errorCount++;
+						keypadLc = null;
+						scanThread = null;
+						notifyAll();
+						return;
+					}
+					long time = System.currentTimeMillis();
+					nextTime += scanInterval;
+					if (nextTime < time)
+						nextTime = time;
+					lc = keypadLc;
+					try {
+						count = scan();
+					} catch (IOException e) {
+						errorCount++;
+						continue;
+					}
+				}
+				for (int k = 0; k < count; k++) {
+					if (evtPressed[k])
+						lc.onPressed(this, evtKey[k]);
+					else
+						lc.onReleased(this, evtKey[k]);
+				}
+			}
+		} finally {
+			// a listener exception must not leave a dead scan thread behind
+			synchronized (this) {
+				if (scanThread == Thread.currentThread()) {
+					keypadLc = null;
+					scanThread = null;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Scan all keys once, debounce and collect the changed keys
+	 * 
+	 * @return number of changed keys
+	 * @throws IOException
+	 */
+	private int scan() throws IOException {
+		int cols = colPins.length;
+		for (int i = 0; i < keySample.length; i++)
+			keySample[i] = 0;
+		for (int r = 0; r < rowPins.length; r++) {
+			try {
+				gpioObj.writePin(rowPins[r], 0);
+				for (int c = 0; c < cols; c++) {
+					if (gpioObj.readPin(colPins[c]) == 0) {
+						int key = r * cols + c;
+						keySample[key >> 5] |= 1 << (key & 31);
+					}
+				}
+			} finally {
+				gpioObj.writePin(rowPins[r], 1);
+			}
+		}
+		int count = 0;
+		for (int i = 0; i < keyState.length; i++) {
+			int delta = keySample[i] ^ keyState[i];
+			keyCount1[i] = (keyCount1[i] ^ keyCount0[i]) & delta;
+			keyCount0[i] = ~keyCount0[i] & delta;
+			int toggle = delta & ~(keyCount0[i] | keyCount1[i]);
+			if (toggle == 0)
+				continue;
+			keyState[i] ^= toggle;
+			eventTime = System.currentTimeMillis();
+			for (int b = 0; toggle != 0; b++, toggle >>>= 1) {
+				if ((toggle & 1) == 0)
+					continue;
+				evtKey[count] = (i << 5) + b;
+				evtPressed[count] = (keyState[i] & (1 << b)) != 0;
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Set the TiKeypad event listener, the scan thread is started when the
+	 * listener is set and stopped when it is removed
+	 * 
+	 * @param lc
+	 *            listener or null[IN]
+	 */
+	public void setEventListener(ITiKeypadEventListener lc) {
+		synchronized (this) {
+			if (keypadLc == null && lc != null) {
+				for (int i = 0; i < keyState.length; i++) {
+					keyState[i] = 0;
+					keyCount0[i] = 0;
+					keyCount1[i] = 0;
+				}
+				keypadLc = lc;
+				if (scanThread == null) {
+					scanThread = new Thread(new Runnable() {
+						public void run() {
+							scanLoop();
+						}
+					});
+					scanThread.start();
+				}
+			} else if (keypadLc != null && lc == null) {
+				keypadLc = null;
+				notifyAll();
+			} else {
+			}
+		}
+		return;
+	}
+
+	/**
+	 * Set the scan interval, a key changes after 4 equal scans, default:5ms
+	 * 
+	 * @param interval
+	 *            scan interval, unit:ms[IN]
+	 */
+	public void setScanInterval(int interval) {
+		if (interval <= 0)
+			throw new IllegalArgumentException("invalid interval.");
+		synchronized (this) {
+			scanInterval = interval;
+		}
+	}
+
+	/**
+	 * Check if the key is pressed, debounced
+	 * 
+	 * @param key
+	 *            key index, row * column number + column[IN]
+	 * @return true:pressed, false:released
+	 */
+	public boolean isPressed(int key) {
+		if (key < 0 || key >= rowPins.length * colPins.length)
+			throw new IllegalArgumentException("invalid key.");
+		synchronized (this) {
+			return (keyState[key >> 5] & (1 << (key & 31))) != 0;
+		}
+	}
+
+	/**
+	 * Gets the event occur time, unit:ms
+	 * 
+	 * @return time value
+	 */
+	public long getEventTime() {
+		synchronized (this) {
+			return eventTime;
+		}
+	}
+
+	/**
+	 * Gets the number of failed scans, the scanning goes on after a GPIO error
+	 * 
+	 * @return error count
+	 */
+	public int getErrorCount() {
+		synchronized (this) {
+			return errorCount;
+		}
+	}
+
+	/**
+	 * Gets the key number
+	 * 
+	 * @return row number * column number
+	 */
+	public int getKeyNumber() {
+		return rowPins.length * colPins.length;
+	}
+
+	/**
+	 * Gets the row number
+	 * 
+	 * @return row number
+	 */
+	public int getRowNumber() {
+		return rowPins.length;
+	}
+
+	/**
+	 * Gets the column number
+	 * 
+	 * @return column number
+	 */
+	public int getColumnNumber() {
+		return colPins.length;
+	}
+}
@@ -0,0 +1,16 @@
+package tijos.framework.sensor.common;
+
+/*
+ * Threshold listener for TiADCSampler 
+ * 
+ */
+public interface ITiADCThresholdListener {
+	/**
+	 * the event is triggered when the threshold is crossed for the dwell time
+	 * @param sampler the sampler object
+	 * @param threshold the threshold id
+	 * @param active true:beyond the threshold, false:back within the hysteresis band
+	 * @param value the sample value
+	 */
+	public void onThreshold(TiADCSampler sampler, int threshold, boolean active, int value);
+}
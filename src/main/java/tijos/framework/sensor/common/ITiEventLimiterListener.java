@@ -0,0 +1,15 @@
+package tijos.framework.sensor.common;
+
+/*
+ * Listener for the delayed notification of TiEventLimiter 
+ * 
+ */
+public interface ITiEventLimiterListener {
+	/**
+	 * the event is triggered when the trailing notification of a window is due
+	 * @param limiter the limiter object
+	 * @param level the latest level
+	 * @param time the latest event time, unit:us
+	 */
+	public void onLimitedEvent(TiEventLimiter limiter, int level, long time);
+}
@@ -0,0 +1,15 @@
+package tijos.framework.sensor.common;
+
+/*
+ * Pin listener for TiPinPoller 
+ * 
+ */
+public interface ITiPinPollerListener {
+	/**
+	 * the event is triggered when the debounced level of the pin is changed
+	 * @param pin the pin id
+	 * @param level the debounced level, 0 or 1
+	 * @param time the sample time, unit:ms
+	 */
+	public void onPinChanged(int pin, int level, long time);
+}
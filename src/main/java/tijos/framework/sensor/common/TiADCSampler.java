@@ -0,0 +1,810 @@
+package tijos.framework.sensor.common;
+
+import java.io.IOException;
+
+import tijos.framework.devicecenter.TiADC;
+
+/**
+ * 
+ * ADC sampler, all registered channels are sampled periodically by one thread
+ * into a ring of the last window samples, the average, EMA, min, max and
+ * variance of each channel are kept incrementally so they are read in O(1).
+ * The channels of one ADC are sampled in one ordered sweep per tick with a
+ * single timestamp, the latest values of all channels form a snapshot. The
+ * thresholds with hysteresis and dwell time are checked after each sweep
+ */
+public class TiADCSampler {
+	/**
+	 * Sample interval, unit:ms
+	 */
+	private int sampleInterval;
+	/**
+	 * Window size, samples
+	 */
+	private int windowSize;
+	/**
+	 * EMA weight, alpha = 1 / 2^emaShift
+	 */
+	private int emaShift;
+	/**
+	 * Registered channel ids
+	 */
+	private int[] chanList;
+	/**
+	 * Reference count of each channel
+	 */
+	private int[] refList;
+	/**
+	 * Registered channel number
+	 */
+	private int chanCount;
+	/**
+	 * Sample rings of all channels, windowSize per channel
+	 */
+	private int[] ringData;
+	/**
+	 * Sample number in the ring of each channel
+	 */
+	private int[] ringFill;
+	/**
+	 * Sample sequence, shared by all channels, the ring position is seq %
+	 * windowSize
+	 */
+	private long sampleSeq;
+	/**
+	 * Latest sample of each channel, the snapshot
+	 */
+	private int[] lastValue;
+	/**
+	 * Sweep time of the latest sample of each channel, unit:ms
+	 */
+	private long[] lastTime;
+	/**
+	 * Channel indexes in ascending channel id, the sweep order
+	 */
+	private int[] sweepOrder;
+	/**
+	 * Channel number in the sweep order
+	 */
+	private int sweepSize;
+	/**
+	 * Time of the last sweep, unit:ms
+	 */
+	private long sweepTime;
+	/**
+	 * Sum of the window of each channel
+	 */
+	private long[] sumList;
+	/**
+	 * Sum of squares of the window of each channel
+	 */
+	private long[] sumSqList;
+	/**
+	 * EMA of each channel, fixed point with 8 fraction bits
+	 */
+	private int[] emaList;
+	/**
+	 * Min deques of all channels, sample sequence, windowSize per channel
+	 */
+	private long[] minQueue;
+	/**
+	 * Max deques of all channels, sample sequence, windowSize per channel
+	 */
+	private long[] maxQueue;
+	/**
+	 * Min deque head and size of each channel
+	 */
+	private int[] minHead, minSize;
+	/**
+	 * Max deque head and size of each channel
+	 */
+	private int[] maxHead, maxSize;
+	/**
+	 * Channel index of each threshold
+	 */
+	private int[] thrIndex;
+	/**
+	 * Level of each threshold
+	 */
+	private int[] thrLevel;
+	/**
+	 * Hysteresis of each threshold
+	 */
+	private int[] thrHyst;
+	/**
+	 * Dwell time of each threshold, unit:ms
+	 */
+	private int[] thrDwell;
+	/**
+	 * Direction of each threshold, true:active above the level
+	 */
+	private boolean[] thrRising;
+	/**
+	 * State of each threshold
+	 */
+	private boolean[] thrActive;
+	/**
+	 * Time the state change is pending since, unit:ms, -1:none
+	 */
+	private long[] thrSince;
+	/**
+	 * Generation of each threshold slot, increased when the slot is reused,
+	 * the threshold id is generation << 16 | slot
+	 */
+	private int[] thrGen;
+	/**
+	 * Listener of each threshold, null:free
+	 */
+	private ITiADCThresholdListener[] thrLc;
+	/**
+	 * Threshold number
+	 */
+	private int thrCount;
+	/**
+	 * Threshold events of one sweep, listener
+	 */
+	private ITiADCThresholdListener[] evtLc;
+	/**
+	 * Threshold events of one sweep, threshold id
+	 */
+	private int[] evtId;
+	/**
+	 * Threshold events of one sweep, state
+	 */
+	private boolean[] evtActive;
+	/**
+	 * Threshold events of one sweep, sample value
+	 */
+	private int[] evtValue;
+	/**
+	 * Sample thread
+	 */
+	private Thread sampleThread = null;
+	/**
+	 * TiADC object
+	 */
+	private TiADC adcObj;
+
+	/**
+	 * TiADCSampler initialization
+	 * 
+	 * @param adc
+	 *            TiADC object[IN]
+	 * @param interval
+	 *            sample interval, unit:ms[IN]
+	 * @param window
+	 *            window size of the average, min, max and variance,
+	 *            samples[IN]
+	 * @param shift
+	 *            EMA weight, alpha = 1 / 2^shift, 0..15[IN]
+	 */
+	public TiADCSampler(TiADC adc, int interval, int window, int shift) {
+		if (interval <= 0 || window <= 0 || shift < 0 || shift > 15)
+			throw new IllegalArgumentException("invalid parameters.");
+		adcObj = adc;
+		sampleInterval = interval;
+		windowSize = window;
+		emaShift = shift;
+		capacity(2);
+		thrCapacity(4);
+	}
+
+	/**
+	 * Register a channel, the sampling starts with the first channel
+	 * 
+	 * @param channel
+	 *            channel id[IN]
+	 * @return channel index
+	 */
+	public int register(int channel) {
+		synchronized (this) {
+			int index = indexOf(channel);
+			if (index >= 0) {
+				refList[index]++;
+				return index;
+			}
+			for (index = 0; index < chanCount; index++) {
+				if (refList[index] == 0)
+					break;
+			}
+			if (index == chanCount) {
+				if (chanCount >= chanList.length)
+					capacity(chanList.length * 2);
+				chanCount++;
+			}
+			chanList[index] = channel;
+			refList[index] = 1;
+			ringFill[index] = 0;
+			sumList[index] = 0;
+			sumSqList[index] = 0;
+			minSize[index] = 0;
+			maxSize[index] = 0;
+			for (int i = index * windowSize; i < (index + 1) * windowSize; i++)
+				ringData[i] = 0;
+			orderBuild();
+			if (sampleThread == null) {
+				sampleThread = new Thread(new Runnable() {
+					public void run() {
+						sampleLoop();
+					}
+				});
+				sampleThread.start();
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Unregister a channel, the sampling stops with the last channel
+	 * 
+	 * @param index
+	 *            channel index[IN]
+	 */
+	public void unregister(int index) {
+		synchronized (this) {
+			if (index < 0 || index >= chanCount || refList[index] == 0)
+				return;
+			refList[index]--;
+			if (refList[index] == 0) {
+				for (int id = 0; id < thrCount; id++) {
+					if (thrIndex[id] == index)
+						thrLc[id] = null;
+				}
+				orderBuild();
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Add a threshold of a channel, it becomes active when the samples stay
+	 * beyond the level for the dwell time and inactive when they stay back
+	 * within the hysteresis band for the dwell time
+	 * 
+	 * @param index
+	 *            channel index[IN]
+	 * @param level
+	 *            threshold level, raw value[IN]
+	 * @param hysteresis
+	 *            hysteresis band, raw value[IN]
+	 * @param dwell
+	 *            dwell time, unit:ms[IN]
+	 * @param rising
+	 *            true:active above the level, false:active below the
+	 *            level[IN]
+	 * @param lc
+	 *            listener[IN]
+	 * @return threshold id, a removed id is never valid again
+	 */
+	public int addThreshold(int index, int level, int hysteresis, int dwell, boolean rising,
+			ITiADCThresholdListener lc) {
+		if (hysteresis < 0 || dwell < 0 || lc == null)
+			throw new IllegalArgumentException("invalid parameters.");
+		synchronized (this) {
+			if (index < 0 || index >= chanCount || refList[index] == 0)
+				throw new IllegalArgumentException("invalid index.");
+			int id;
+			for (id = 0; id < thrCount; id++) {
+				if (thrLc[id] == null)
+					break;
+			}
+			if (id == thrCount) {
+				if (thrCount >= 0x10000)
+					throw new IllegalArgumentException("too many thresholds.");
+				if (thrCount >= thrLc.length)
+					thrCapacity(thrLc.length * 2);
+				thrCount++;
+			}
+			thrGen[id] = (thrGen[id] + 1) & 0x7fff;
+			thrIndex[id] = index;
+			thrLevel[id] = level;
+			thrHyst[id] = hysteresis;
+			thrDwell[id] = dwell;
+			thrRising[id] = rising;
+			thrActive[id] = false;
+			thrSince[id] = -1;
+			thrLc[id] = lc;
+			return (thrGen[id] << 16) | id;
+		}
+	}
+
+	/**
+	 * Gets the slot of a threshold id
+	 * 
+	 * @param id
+	 *            threshold id[IN]
+	 * @return slot, -1:removed or invalid id
+	 */
+	private int thrSlot(int id) {
+		int slot = id & 0xffff;
+		if (id < 0 || slot >= thrCount || thrLc[slot] == null || thrGen[slot] != (id >>> 16))
+			return -1;
+		return slot;
+	}
+
+	/**
+	 * Remove a threshold
+	 * 
+	 * @param id
+	 *            threshold id[IN]
+	 */
+	public void removeThreshold(int id) {
+		synchronized (this) {
+			int slot = thrSlot(id);
+			if (slot >= 0)
+				thrLc[slot] = null;
+		}
+	}
+
+	/**
+	 * Remove all thresholds of a listener
+	 * 
+	 * @param lc
+	 *            listener[IN]
+	 */
+	public void removeThresholds(ITiADCThresholdListener lc) {
+		synchronized (this) {
+			for (int id = 0; id < thrCount; id++) {
+				if (thrLc[id] == lc)
+					thrLc[id] = null;
+			}
+		}
+	}
+
+	/**
+	 * Check if the threshold is active
+	 * 
+	 * @param id
+	 *            threshold id[IN]
+	 * @return true:active, false:inactive or removed
+	 */
+	public boolean isThresholdActive(int id) {
+		synchronized (this) {
+			int slot = thrSlot(id);
+			return slot >= 0 && thrActive[slot];
+		}
+	}
+
+	/**
+	 * Gets the latest sample
+	 * 
+	 * @param index
+	 *            channel index[IN]
+	 * @return raw value, -1:no sample
+	 */
+	public int getLatest(int index) {
+		synchronized (this) {
+			return (ringFill[index] == 0) ? -1 : lastValue[index];
+		}
+	}
+
+	/**
+	 * Gets the sweep time of the latest sample
+	 * 
+	 * @param index
+	 *            channel index[IN]
+	 * @return time value, unit:ms, -1:no sample
+	 */
+	public long getSampleTime(int index) {
+		synchronized (this) {
+			return (ringFill[index] == 0) ? -1 : lastTime[index];
+		}
+	}
+
+	/**
+	 * Read the snapshot of the latest samples of all channels, the values are
+	 * indexed by the channel index and the not registered ones are -1
+	 * 
+	 * @param values
+	 *            value buffer, at least getChannelCount() length[OUT]
+	 * @return time of the last sweep, unit:ms
+	 */
+	public long readSnapshot(int[] values) {
+		synchronized (this) {
+			for (int i = 0; i < chanCount; i++)
+				values[i] = (refList[i] == 0 || ringFill[i] == 0) ? -1 : lastValue[i];
+			return sweepTime;
+		}
+	}
+
+	/**
+	 * Gets the channel index number, the snapshot length
+	 * 
+	 * @return channel index number
+	 */
+	public int getChannelCount() {
+		synchronized (this) {
+			return chanCount;
+		}
+	}
+
+	/**
+	 * Gets the sweep number since the sampler is created
+	 * 
+	 * @return sweep number
+	 */
+	public long getSweepCount() {
+		synchronized (this) {
+			return sampleSeq;
+		}
+	}
+
+	/**
+	 * Gets the sample number in the window
+	 * 
+	 * @param index
+	 *            channel index[IN]
+	 * @return sample number
+	 */
+	public int getCount(int index) {
+		synchronized (this) {
+			return ringFill[index];
+		}
+	}
+
+	/**
+	 * Gets the moving average of the window
+	 * 
+	 * @param index
+	 *            channel index[IN]
+	 * @return average, 0:no sample
+	 */
+	public double getAverage(int index) {
+		synchronized (this) {
+			int n = ringFill[index];
+			return (n == 0) ? 0 : (double) sumList[index] / n;
+		}
+	}
+
+	/**
+	 * Gets the exponential moving average
+	 * 
+	 * @param index
+	 *            channel index[IN]
+	 * @return EMA, 0:no sample
+	 */
+	public double getEMA(int index) {
+		synchronized (this) {
+			return (ringFill[index] == 0) ? 0 : emaList[index] / 256.0;
+		}
+	}
+
+	/**
+	 * Gets the min sample of the window
+	 * 
+	 * @param index
+	 *            channel index[IN]
+	 * @return raw value, -1:no sample
+	 */
+	public int getMin(int index) {
+		synchronized (this) {
+			if (minSize[index] == 0)
+				return -1;
+			int base = index * windowSize;
+			return ringData[base + (int) (minQueue[base + minHead[index]] % windowSize)];
+		}
+	}
+
+	/**
+	 * Gets the max sample of the window
+	 * 
+	 * @param index
+	 *            channel index[IN]
+	 * @return raw value, -1:no sample
+	 */
+	public int getMax(int index) {
+		synchronized (this) {
+			if (maxSize[index] == 0)
+				return -1;
+			int base = index * windowSize;
+			return ringData[base + (int) (maxQueue[base + maxHead[index]] % windowSize)];
+		}
+	}
+
+	/**
+	 * Gets the variance of the window
+	 * 
+	 * @param index
+	 *            channel index[IN]
+	 * @return variance, 0:no sample
+	 */
+	public double getVariance(int index) {
+		synchronized (this) {
+			int n = ringFill[index];
+			if (n == 0)
+				return 0;
+			double mean = (double) sumList[index] / n;
+			double var = (double) sumSqList[index] / n - mean * mean;
+			return (var < 0) ? 0 : var;
+		}
+	}
+
+	/**
+	 * Gets the index of the channel
+	 * 
+	 * @param channel
+	 *            channel id[IN]
+	 * @return index, -1:not registered
+	 */
+	private int indexOf(int channel) {
+		for (int i = 0; i < chanCount; i++) {
+			if (refList[i] > 0 && chanList[i] == channel)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Set the channel capacity, the old data is kept
+	 * 
+	 * @param size
+	 *            channel capacity[IN]
+	 */
+	private void capacity(int size) {
+		int n = chanCount;
+		chanList = copyOf(chanList, size, n);
+		refList = copyOf(refList, size, n);
+		ringFill = copyOf(ringFill, size, n);
+		lastValue = copyOf(lastValue, size, n);
+		sweepOrder = copyOf(sweepOrder, size, sweepSize);
+		emaList = copyOf(emaList, size, n);
+		minHead = copyOf(minHead, size, n);
+		minSize = copyOf(minSize, size, n);
+		maxHead = copyOf(maxHead, size, n);
+		maxSize = copyOf(maxSize, size, n);
+		ringData = copyOf(ringData, size * windowSize, n * windowSize);
+		long[] list = new long[size];
+		if (n > 0)
+			System.arraycopy(sumList, 0, list, 0, n);
+		sumList = list;
+		list = new long[size];
+		if (n > 0)
+			System.arraycopy(sumSqList, 0, list, 0, n);
+		sumSqList = list;
+		list = new long[size];
+		if (n > 0)
+			System.arraycopy(lastTime, 0, list, 0, n);
+		lastTime = list;
+		list = new long[size * windowSize];
+		if (n > 0)
+			System.arraycopy(minQueue, 0, list, 0, n * windowSize);
+		minQueue = list;
+		list = new long[size * windowSize];
+		if (n > 0)
+			System.arraycopy(maxQueue, 0, list, 0, n * windowSize);
+		maxQueue = list;
+	}
+
+	/**
+	 * Set the threshold capacity, the old thresholds are kept
+	 * 
+	 * @param size
+	 *            threshold capacity[IN]
+	 */
+	private void thrCapacity(int size) {
+		int n = thrCount;
+		thrIndex = copyOf(thrIndex, size, n);
+		thrLevel = copyOf(thrLevel, size, n);
+		thrHyst = copyOf(thrHyst, size, n);
+		thrDwell = copyOf(thrDwell, size, n);
+		thrGen = copyOf(thrGen, size, n);
+		boolean[] flags = new boolean[size];
+		if (n > 0)
+			System.arraycopy(thrRising, 0, flags, 0, n);
+		thrRising = flags;
+		flags = new boolean[size];
+		if (n > 0)
+			System.arraycopy(thrActive, 0, flags, 0, n);
+		thrActive = flags;
+		long[] times = new long[size];
+		if (n > 0)
+			System.arraycopy(thrSince, 0, times, 0, n);
+		thrSince = times;
+		ITiADCThresholdListener[] lcs = new ITiADCThresholdListener[size];
+		if (n > 0)
+			System.arraycopy(thrLc, 0, lcs, 0, n);
+		thrLc = lcs;
+		evtLc = new ITiADCThresholdListener[size];
+		evtId = new int[size];
+		evtActive = new boolean[size];
+		evtValue = new int[size];
+	}
+
+	/**
+	 * Build the sweep order, registered channels in ascending channel id
+	 */
+	private void orderBuild() {
+		sweepSize = 0;
+		for (int i = 0; i < chanCount; i++) {
+			if (refList[i] == 0)
+				continue;
+			int j = sweepSize++;
+			while (j > 0 && chanList[sweepOrder[j - 1]] > chanList[i]) {
+				sweepOrder[j] = sweepOrder[j - 1];
+				j--;
+			}
+			sweepOrder[j] = i;
+		}
+	}
+
+	/**
+	 * Copy an int array to a new length
+	 * 
+	 * @param src
+	 *            source array or null[IN]
+	 * @param size
+	 *            new length[IN]
+	 * @param n
+	 *            length to copy[IN]
+	 * @return new array
+	 */
+	private static int[] copyOf(int[] src, int size, int n) {
+		int[] dst = new int[size];
+		if (n > 0)
+			System.arraycopy(src, 0, dst, 0, n);
+		return dst;
+	}
+
+	/**
+	 * Sample all channels periodically until no channel is registered, the
+	 * threshold listeners are called out of the sampler lock
+	 */
+	private void sampleLoop() {
+		long nextTime = System.currentTimeMillis();
+		for (;;) {
+			int count;
+			ITiADCThresholdListener[] lcs;
+			int[] ids;
+			boolean[] states;
+			int[] values;
+			synchronized (this) {
+				try {
+					for (;;) {
+						if (sweepSize == 0) {
+							sampleThread = null;
+							return;
+						}
+						long timeLeft = nextTime - System.currentTimeMillis();
+						if (timeLeft <= 0)
+							break;
+						wait(timeLeft);
+					}
+				} catch (InterruptedException e) {
+					sampleThread = null;
+					return;
+				}
+				nextTime += sampleInterval;
+				sweep();
+				count = thresholdCheck();
+				if (nextTime < System.currentTimeMillis())
+					nextTime = System.currentTimeMillis();
+				lcs = evtLc;
+				ids = evtId;
+				states = evtActive;
+				values = evtValue;
+			}
+			for (int i = 0; i < count; i++) {
+				ITiADCThresholdListener lc = lcs[i];
+				lcs[i] = null;
+				lc.onThreshold(this, ids[i], states[i], values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Check the thresholds of the channels sampled in the last sweep
+	 * 
+	 * @return event number
+	 */
+	private int thresholdCheck() {
+		int count = 0;
+		for (int id = 0; id < thrCount; id++) {
+			if (thrLc[id] == null)
+				continue;
+			int i = thrIndex[id];
+			if (refList[i] == 0 || ringFill[i] == 0 || lastTime[i] != sweepTime)
+				continue;
+			int value = lastValue[i];
+			boolean state;
+			if (thrRising[id])
+				state = thrActive[id] ? value > thrLevel[id] - thrHyst[id] : value >= thrLevel[id];
+			else
+				state = thrActive[id] ? value < thrLevel[id] + thrHyst[id] : value <= thrLevel[id];
+			if (state == thrActive[id]) {
+				thrSince[id] = -1;
+				continue;
+			}
+			if (thrSince[id] < 0)
+				thrSince[id] = sweepTime;
+			if (sweepTime - thrSince[id] < thrDwell[id])
+				continue;
+			thrActive[id] = state;
+			thrSince[id] = -1;
+			evtLc[count] = thrLc[id];
+			evtId[count] = (thrGen[id] << 16) | id;
+			evtActive[count] = state;
+			evtValue[count] = value;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Sample the registered channels once in ascending channel id and update
+	 * the statistics, all samples of the sweep share one timestamp, a failed
+	 * read repeats the previous sample so each sweep fills one ring slot
+	 */
+	private void sweep() {
+		long seq = sampleSeq++;
+		int pos = (int) (seq % windowSize);
+		sweepTime = System.currentTimeMillis();
+		for (int k = 0; k < sweepSize; k++) {
+			int i = sweepOrder[k];
+			try {
+				sample(i, adcObj.getRawValue(chanList[i]), seq, pos);
+				lastTime[i] = sweepTime;
+			} catch (IOException e) {
+				// keep the ring slot of this sweep, repeat the previous sample
+				if (ringFill[i] > 0)
+					sample(i, lastValue[i], seq, pos);
+			}
+		}
+	}
+
+	/**
+	 * Add a sample of the channel
+	 * 
+	 * @param i
+	 *            channel index[IN]
+	 * @param value
+	 *            raw value[IN]
+	 * @param seq
+	 *            sample sequence[IN]
+	 * @param pos
+	 *            ring position[IN]
+	 */
+	private void sample(int i, int value, long seq, int pos) {
+		int base = i * windowSize;
+		if (ringFill[i] == windowSize) {
+			int old = ringData[base + pos];
+			sumList[i] -= old;
+			sumSqList[i] -= (long) old * old;
+		} else {
+			ringFill[i]++;
+		}
+		// drop the expired heads, then the tails which can never be min/max
+		long expired = seq - windowSize;
+		while (minSize[i] > 0 && minQueue[base + minHead[i]] <= expired) {
+			minHead[i] = (minHead[i] + 1) % windowSize;
+			minSize[i]--;
+		}
+		while (maxSize[i] > 0 && maxQueue[base + maxHead[i]] <= expired) {
+			maxHead[i] = (maxHead[i] + 1) % windowSize;
+			maxSize[i]--;
+		}
+		while (minSize[i] > 0) {
+			int tail = (minHead[i] + minSize[i] - 1) % windowSize;
+			if (ringData[base + (int) (minQueue[base + tail] % windowSize)] < value)
+				break;
+			minSize[i]--;
+		}
+		while (maxSize[i] > 0) {
+			int tail = (maxHead[i] + maxSize[i] - 1) % windowSize;
+			if (ringData[base + (int) (maxQueue[base + tail] % windowSize)] > value)
+				break;
+			maxSize[i]--;
+		}
+		ringData[base + pos] = value;
+		minQueue[base + (minHead[i] + minSize[i]) % windowSize] = seq;
+		minSize[i]++;
+		maxQueue[base + (maxHead[i] + maxSize[i]) % windowSize] = seq;
+		maxSize[i]++;
+		sumList[i] += value;
+		sumSqList[i] += (long) value * value;
+		if (ringFill[i] == 1)
+			emaList[i] = value << 8;
+		else
+			emaList[i] += ((value << 8) - emaList[i]) >> emaShift;
+		lastValue[i] = value;
+	}
+}
@@ -0,0 +1,339 @@
+package tijos.framework.sensor.common;
+
+/**
+ * 
+ * Event rate limiter, the events are coalesced by a min interval and a max
+ * rate per second, the leading event of a window is notified at once and the
+ * trailing one with the latest level and time is notified at the window end,
+ * the trailing notifications of all limiters are driven by one thread, which
+ * is started on demand and ends when no notification is pending
+ */
+public class TiEventLimiter {
+	/**
+	 * Mode, notify the leading event of a window and drop the others
+	 */
+	public static final int MODE_LEADING = 1;
+	/**
+	 * Mode, notify the latest event at the window end
+	 */
+	public static final int MODE_TRAILING = 2;
+	/**
+	 * Mode, notify the leading event at once and the latest one at the window
+	 * end
+	 */
+	public static final int MODE_BOTH = 3;
+
+	/**
+	 * Pending limiters of the trailing notification
+	 */
+	private static TiEventLimiter[] pendingList = new TiEventLimiter[4];
+	/**
+	 * Due time of the pending limiters, unit:ms
+	 */
+	private static long[] pendingTime = new long[4];
+	/**
+	 * Pending limiter number
+	 */
+	private static int pendingCount = 0;
+	/**
+	 * Trailing notification thread
+	 */
+	private static Thread timerThread = null;
+
+	/**
+	 * Min interval between notifications, unit:ms
+	 */
+	private int minInterval;
+	/**
+	 * Limiter mode
+	 */
+	private int limitMode;
+	/**
+	 * Max notifications per second, 0:no limit
+	 */
+	private int maxRate;
+	/**
+	 * Last notify time, unit:ms
+	 */
+	private long notifyTime;
+	/**
+	 * Start time of the rate window, unit:ms
+	 */
+	private long rateStart;
+	/**
+	 * Notifications in the rate window
+	 */
+	private int rateCount;
+	/**
+	 * Latest level
+	 */
+	private int lastLevel;
+	/**
+	 * Latest event time, unit:us
+	 */
+	private long lastTime;
+	/**
+	 * Trailing notification pending flag
+	 */
+	private boolean pending;
+	/**
+	 * Pending event replaced by a later one in the window
+	 */
+	private boolean pendingMerged;
+	/**
+	 * Dropped event count
+	 */
+	private int droppedCount;
+	/**
+	 * Merged event count
+	 */
+	private int mergedCount;
+	/**
+	 * Listener of the trailing notification
+	 */
+	private ITiEventLimiterListener limiterLc;
+
+	/**
+	 * TiEventLimiter initialization
+	 * 
+	 * @param lc
+	 *            listener of the trailing notification[IN]
+	 * @param interval
+	 *            min interval between notifications, unit:ms[IN]
+	 * @param mode
+	 *            MODE_LEADING, MODE_TRAILING or MODE_BOTH[IN]
+	 * @param rate
+	 *            max notifications per second, 0:no limit[IN]
+	 */
+	public TiEventLimiter(ITiEventLimiterListener lc, int interval, int mode, int rate) {
+		if (interval < 0 || rate < 0 || mode < MODE_LEADING || mode > MODE_BOTH)
+			throw new IllegalArgumentException("invalid parameters.");
+		limiterLc = lc;
+		minInterval = interval;
+		limitMode = mode;
+		maxRate = rate;
+		notifyTime = System.currentTimeMillis() - interval;
+		rateStart = notifyTime;
+	}
+
+	/**
+	 * Offer an event to the limiter
+	 * 
+	 * @param level
+	 *            event level[IN]
+	 * @param time
+	 *            event time, unit:us[IN]
+	 * @return true:notify now, false:dropped or merged into the trailing
+	 *         notification
+	 */
+	public boolean offer(int level, long time) {
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			lastLevel = level;
+			lastTime = time;
+			if ((limitMode & MODE_LEADING) != 0 && !pending && isAllowed(now)) {
+				consume(now);
+				return true;
+			}
+			if ((limitMode & MODE_TRAILING) == 0) {
+				droppedCount++;
+				return false;
+			}
+			if (pending) {
+				// the first pending event is merged too
+				mergedCount += pendingMerged ? 1 : 2;
+				pendingMerged = true;
+				return false;
+			}
+			pending = true;
+			pendingMerged = false;
+			long due = ((limitMode & MODE_LEADING) != 0 ? notifyTime : now) + minInterval;
+			if (maxRate > 0 && rateCount >= maxRate && rateStart + 1000 > due)
+				due = rateStart + 1000;
+			schedule(this, due);
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the latest level
+	 * 
+	 * @return level
+	 */
+	public int getLevel() {
+		synchronized (this) {
+			return lastLevel;
+		}
+	}
+
+	/**
+	 * Gets the latest event time
+	 * 
+	 * @return time value, unit:us
+	 */
+	public long getTime() {
+		synchronized (this) {
+			return lastTime;
+		}
+	}
+
+	/**
+	 * Gets the dropped event count, the events never notified
+	 * 
+	 * @return count
+	 */
+	public int getDroppedCount() {
+		synchronized (this) {
+			return droppedCount;
+		}
+	}
+
+	/**
+	 * Gets the merged event count, the events coalesced into a trailing
+	 * notification with other events, including the notified one
+	 * 
+	 * @return count
+	 */
+	public int getMergedCount() {
+		synchronized (this) {
+			return mergedCount;
+		}
+	}
+
+	/**
+	 * Check if a notification is allowed now
+	 * 
+	 * @param now
+	 *            current time, unit:ms[IN]
+	 * @return true or false
+	 */
+	private boolean isAllowed(long now) {
+		if (now - notifyTime < minInterval)
+			return false;
+		if (maxRate == 0)
+			return true;
+		if (now - rateStart >= 1000) {
+			rateStart = now;
+			rateCount = 0;
+		}
+		return rateCount < maxRate;
+	}
+
+	/**
+	 * Record a notification
+	 * 
+	 * @param now
+	 *            current time, unit:ms[IN]
+	 */
+	private void consume(long now) {
+		notifyTime = now;
+		if (maxRate > 0) {
+			if (now - rateStart >= 1000) {
+				rateStart = now;
+				rateCount = 0;
+			}
+			rateCount++;
+		}
+	}
+
+	/**
+	 * Deliver the trailing notification
+	 */
+	private void trailingNotify() {
+		int level;
+		long time;
+		synchronized (this) {
+			if (!pending)
+				return;
+			pending = false;
+			consume(System.currentTimeMillis());
+			level = lastLevel;
+			time = lastTime;
+		}
+		limiterLc.onLimitedEvent(this, level, time);
+	}
+
+	/**
+	 * Add the limiter to the pending list
+	 * 
+	 * @param limiter
+	 *            TiEventLimiter object[IN]
+	 * @param due
+	 *            due time, unit:ms[IN]
+	 */
+	private static synchronized void schedule(TiEventLimiter limiter, long due) {
+		if (pendingCount >= pendingList.length) {
+			TiEventLimiter[] list = new TiEventLimiter[pendingList.length * 2];
+			System.arraycopy(pendingList, 0, list, 0, pendingCount);
+			pendingList = list;
+			long[] times = new long[list.length];
+			System.arraycopy(pendingTime, 0, times, 0, pendingCount);
+			pendingTime = times;
+		}
+		pendingList[pendingCount] = limiter;
+		pendingTime[pendingCount] = due;
+		pendingCount++;
+		if (timerThread == null) {
+			timerThread = new Thread(new Runnable() {
+				public void run() {
+					timerLoop();
+				}
+			});
+			timerThread.start();
+		} else {
+			TiEventLimiter.class.notifyAll();
+		}
+	}
+
+	/**
+	 * Take a due limiter from the pending list, wait until one is due, the
+	 * thread is released when the pending list is empty
+	 * 
+	 * @return TiEventLimiter object, null:no pending limiter
+	 * @throws InterruptedException
+	 */
+	private static synchronized TiEventLimiter take() throws InterruptedException {
+		for (;;) {
+			long now = System.currentTimeMillis();
+			long next = Long.MAX_VALUE;
+			for (int i = 0; i < pendingCount; i++) {
+				if (pendingTime[i] <= now) {
+					TiEventLimiter limiter = pendingList[i];
+					pendingCount--;
+					pendingList[i] = pendingList[pendingCount];
+					pendingTime[i] = pendingTime[pendingCount];
+					pendingList[pendingCount] = null;
+					return limiter;
+				}
+				if (pendingTime[i] < next)
+					next = pendingTime[i];
+			}
+			if (pendingCount == 0) {
+				timerThread = null;
+				return null;
+			}
+			TiEventLimiter.class.wait(next - now);
+		}
+	}
+
+	/**
+	 * Deliver the trailing notifications when due until the pending list is
+	 * empty
+	 */
+	private static void timerLoop() {
+		for (;;) {
+			TiEventLimiter limiter;
+			try {
+				limiter = take();
+			} catch (InterruptedException e) {
+				synchronized (TiEventLimiter.class) {
+					timerThread = null;
+				}
+				return;
+			}
+			if (limiter == null)
+				return;
+			limiter.trailingNotify();
+		}
+	}
+}
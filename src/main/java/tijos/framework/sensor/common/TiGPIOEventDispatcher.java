@@ -0,0 +1,117 @@
+package tijos.framework.sensor.common;
+
+import tijos.framework.eventcenter.ITiEvent;
+import tijos.framework.eventcenter.ITiEventListener;
+import tijos.framework.eventcenter.TiEventService;
+import tijos.framework.eventcenter.TiEventType;
+import tijos.framework.eventcenter.TiGPIOEvent;
+
+/**
+ * 
+ * GPIO event dispatcher shared by all drivers, it is registered to
+ * TiEventService once and each GPIO event is routed to the handler of its pin
+ * through a pin indexed array, one handler per pin
+ */
+public class TiGPIOEventDispatcher implements ITiEventListener {
+	/**
+	 * Shared instance
+	 */
+	private static TiGPIOEventDispatcher instance = null;
+
+	/**
+	 * Handler of each pin, replaced as a whole when changed
+	 */
+	private volatile ITiEventListener[] handlerList;
+	/**
+	 * Attached handler number
+	 */
+	private int handlerCount;
+
+	/**
+	 * Gets the shared instance
+	 * 
+	 * @return TiGPIOEventDispatcher object
+	 */
+	public static synchronized TiGPIOEventDispatcher getInstance() {
+		if (instance == null)
+			instance = new TiGPIOEventDispatcher();
+		return instance;
+	}
+
+	/**
+	 * TiGPIOEventDispatcher initialization
+	 */
+	private TiGPIOEventDispatcher() {
+		handlerList = new ITiEventListener[0];
+	}
+
+	@Override
+	public TiEventType getType() {
+		return TiEventType.GPIO;
+	}
+
+	@Override
+	public void onEvent(ITiEvent evt) {
+		int pin = ((TiGPIOEvent) evt).getPin();
+		ITiEventListener[] list = handlerList;
+		if (pin < 0 || pin >= list.length)
+			return;
+		ITiEventListener handler = list[pin];
+		if (handler != null)
+			handler.onEvent(evt);
+	}
+
+	/**
+	 * Attach the handler of a pin, attaching the same handler again does
+	 * nothing
+	 * 
+	 * @param pin
+	 *            pin id[IN]
+	 * @param handler
+	 *            event handler[IN]
+	 * @throws IllegalStateException
+	 *             the pin is attached by another handler
+	 */
+	public void attach(int pin, ITiEventListener handler) {
+		if (pin < 0 || handler == null)
+			throw new IllegalArgumentException("invalid parameters.");
+		synchronized (this) {
+			ITiEventListener[] list = handlerList;
+			if (pin < list.length && list[pin] != null) {
+				if (list[pin] != handler)
+					throw new IllegalStateException("pin busy.");
+				return;
+			}
+			ITiEventListener[] newList = new ITiEventListener[(pin < list.length) ? list.length : pin + 1];
+			System.arraycopy(list, 0, newList, 0, list.length);
+			newList[pin] = handler;
+			handlerList = newList;
+			if (handlerCount++ == 0)
+				TiEventService.getInstance().addListener(this);
+		}
+	}
+
+	/**
+	 * Detach the handler of a pin, nothing is done if the pin is attached by
+	 * another handler
+	 * 
+	 * @param pin
+	 *            pin id[IN]
+	 * @param handler
+	 *            event handler[IN]
+	 */
+	public void detach(int pin, ITiEventListener handler) {
+		synchronized (this) {
+			ITiEventListener[] list = handlerList;
+			if (pin < 0 || pin >= list.length || list[pin] != handler)
+				return;
+			ITiEventListener[] newList = new ITiEventListener[list.length];
+			System.arraycopy(list, 0, newList, 0, list.length);
+			newList[pin] = null;
+			handlerList = newList;
+			handlerCount--;
+			if (handlerCount == 0)
+				TiEventService.getInstance().unregisterEvent(this);
+		}
+	}
+}
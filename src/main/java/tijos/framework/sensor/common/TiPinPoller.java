@@ -0,0 +1,277 @@
+package tijos.framework.sensor.common;
+
+import java.io.IOException;
+
+import tijos.framework.devicecenter.TiGPIO;
+
+/**
+ * 
+ * Pin poller, all attached pins are sampled on one periodic tick and each pin
+ * is debounced by an integrator, the listener is called only when the
+ * integrator reaches its bound, so the noise never causes interrupts
+ */
+public class TiPinPoller {
+	/**
+	 * Sample interval, unit:ms
+	 */
+	private int pollInterval;
+	/**
+	 * Integrator bound, samples
+	 */
+	private int integMax;
+	/**
+	 * Attached pin ids
+	 */
+	private int[] pinList;
+	/**
+	 * Attached pin listeners
+	 */
+	private ITiPinPollerListener[] lcList;
+	/**
+	 * Integrator of each pin, 0..integMax
+	 */
+	private int[] integList;
+	/**
+	 * Debounced level of each pin
+	 */
+	private int[] levelList;
+	/**
+	 * Attached pin number
+	 */
+	private int pinCount;
+	/**
+	 * Changed pin listeners of one tick
+	 */
+	private ITiPinPollerListener[] chgLc;
+	/**
+	 * Changed pin ids of one tick
+	 */
+	private int[] chgPin;
+	/**
+	 * Changed pin levels of one tick
+	 */
+	private int[] chgLevel;
+	/**
+	 * Poll thread
+	 */
+	private Thread pollThread = null;
+	/**
+	 * TiGPIO object
+	 */
+	private TiGPIO gpioObj;
+
+	/**
+	 * TiPinPoller initialization, default:interval=5ms, samples=4
+	 * 
+	 * @param gpio
+	 *            TiGPIO object[IN]
+	 */
+	public TiPinPoller(TiGPIO gpio) {
+		this(gpio, 5, 4);
+	}
+
+	/**
+	 * TiPinPoller initialization
+	 * 
+	 * @param gpio
+	 *            TiGPIO object[IN]
+	 * @param interval
+	 *            sample interval, unit:ms[IN]
+	 * @param samples
+	 *            equal samples needed to change the level[IN]
+	 */
+	public TiPinPoller(TiGPIO gpio, int interval, int samples) {
+		if (interval <= 0 || samples <= 0)
+			throw new IllegalArgumentException("invalid parameters.");
+		gpioObj = gpio;
+		pollInterval = interval;
+		integMax = samples;
+		pinList = new int[4];
+		lcList = new ITiPinPollerListener[4];
+		integList = new int[4];
+		levelList = new int[4];
+		chgLc = new ITiPinPollerListener[4];
+		chgPin = new int[4];
+		chgLevel = new int[4];
+	}
+
+	/**
+	 * Attach a pin, the pin is sampled from the next tick, the first settled
+	 * level is not reported
+	 * 
+	 * @param pin
+	 *            pin id[IN]
+	 * @param lc
+	 *            listener[IN]
+	 */
+	public void attach(int pin, ITiPinPollerListener lc) {
+		synchronized (this) {
+			int index = indexOf(pin);
+			if (index < 0) {
+				if (pinCount >= pinList.length)
+					grow();
+				index = pinCount++;
+			}
+			pinList[index] = pin;
+			lcList[index] = lc;
+			levelList[index] = -1;
+			integList[index] = integMax / 2;
+			if (pollThread == null) {
+				pollThread = new Thread(new Runnable() {
+					public void run() {
+						pollLoop();
+					}
+				});
+				pollThread.start();
+			}
+		}
+	}
+
+	/**
+	 * Detach a pin
+	 * 
+	 * @param pin
+	 *            pin id[IN]
+	 */
+	public void detach(int pin) {
+		synchronized (this) {
+			int index = indexOf(pin);
+			if (index < 0)
+				return;
+			pinCount--;
+			pinList[index] = pinList[pinCount];
+			lcList[index] = lcList[pinCount];
+			integList[index] = integList[pinCount];
+			levelList[index] = levelList[pinCount];
+			lcList[pinCount] = null;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Gets the debounced level of an attached pin
+	 * 
+	 * @param pin
+	 *            pin id[IN]
+	 * @return 0 or 1, -1:not attached or not settled
+	 */
+	public int getLevel(int pin) {
+		synchronized (this) {
+			int index = indexOf(pin);
+			return (index < 0) ? -1 : levelList[index];
+		}
+	}
+
+	/**
+	 * Gets the index of the pin
+	 * 
+	 * @param pin
+	 *            pin id[IN]
+	 * @return index, -1:not attached
+	 */
+	private int indexOf(int pin) {
+		for (int i = 0; i < pinCount; i++) {
+			if (pinList[i] == pin)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Double the pin list capacity
+	 */
+	private void grow() {
+		int size = pinList.length * 2;
+		int[] pins = new int[size];
+		System.arraycopy(pinList, 0, pins, 0, pinCount);
+		pinList = pins;
+		ITiPinPollerListener[] lcs = new ITiPinPollerListener[size];
+		System.arraycopy(lcList, 0, lcs, 0, pinCount);
+		lcList = lcs;
+		int[] integs = new int[size];
+		System.arraycopy(integList, 0, integs, 0, pinCount);
+		integList = integs;
+		int[] levels = new int[size];
+		System.arraycopy(levelList, 0, levels, 0, pinCount);
+		levelList = levels;
+		chgLc = new ITiPinPollerListener[size];
+		chgPin = new int[size];
+		chgLevel = new int[size];
+	}
+
+	/**
+	 * Sample all pins periodically until no pin is attached, the listeners
+	 * are called out of the poller lock
+	 */
+	private void pollLoop() {
+		long nextTime = System.currentTimeMillis();
+		for (;;) {
+			int count = 0;
+			long time;
+			ITiPinPollerListener[] lcs;
+			int[] pins;
+			int[] levels;
+			synchronized (this) {
+				try {
+					for (;;) {
+						if (pinCount == 0) {
+							pollThread = null;
+							return;
+						}
+						long timeLeft = nextTime - System.currentTimeMillis();
+						if (timeLeft <= 0)
+							break;
+						wait(timeLeft);
+					}
+				} catch (InterruptedException e) {
+					pollThread = null;
+					return;
+				}
+				time = System.currentTimeMillis();
+				nextTime += pollInterval;
+				if (nextTime < time)
+					nextTime = time;
+				for (int i = 0; i < pinCount; i++) {
+					int sample;
+					try {
+						sample = gpioObj.readPin(pinList[i]);
+					} catch (IOException e) {
+						continue;
+					}
+					int integ = integList[i];
+					if (sample != 0) {
+						if (integ < integMax)
+							integ++;
+					} else {
+						if (integ > 0)
+							integ--;
+					}
+					integList[i] = integ;
+					int level = levelList[i];
+					if (integ == integMax)
+						level = 1;
+					else if (integ == 0)
+						level = 0;
+					if (level != levelList[i]) {
+						boolean settled = levelList[i] >= 0;
+						levelList[i] = level;
+						if (!settled)
+							continue;
+						chgLc[count] = lcList[i];
+						chgPin[count] = pinList[i];
+						chgLevel[count] = level;
+						count++;
+					}
+				}
+				lcs = chgLc;
+				pins = chgPin;
+				levels = chgLevel;
+			}
+			for (int i = 0; i < count; i++) {
+				ITiPinPollerListener lc = lcs[i];
+				lcs[i] = null;
+				lc.onPinChanged(pins[i], levels[i], time);
+			}
+		}
+	}
+}
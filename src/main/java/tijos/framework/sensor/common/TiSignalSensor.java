@@ -0,0 +1,486 @@
+package tijos.framework.sensor.common;
+
+import java.io.IOException;
+
+import tijos.framework.devicecenter.TiADC;
+import tijos.framework.devicecenter.TiGPIO;
+import tijos.framework.eventcenter.ITiEvent;
+import tijos.framework.eventcenter.ITiEventListener;
+import tijos.framework.eventcenter.TiEventType;
+import tijos.framework.eventcenter.TiGPIOEvent;
+
+/**
+ * 
+ * Base of the sensors composed with a DOUT pin and an optional AOUT channel,
+ * DOUT is notified by the edge events or the TiPinPoller with an optional
+ * rate limit, AOUT is read from the adc directly or from the TiADCSampler with
+ * the software thresholds and the statistics
+ */
+public abstract class TiSignalSensor implements ITiEventListener, ITiPinPollerListener,
+		ITiEventLimiterListener, ITiADCThresholdListener {
+	/**
+	 * Signal pin id
+	 */
+	private int signalPin;
+	/**
+	 * Analog channel id
+	 */
+	private int analogChannel;
+	/**
+	 * Event filter time of the signal pin, unit:us
+	 */
+	private int eventFilter;
+	/**
+	 * Event time
+	 */
+	private long eventTime;
+	/**
+	 * Event level of DOUT
+	 */
+	private int eventLevel;
+	/**
+	 * Signal pin event enabled
+	 */
+	private boolean eventEnabled;
+	/**
+	 * TiGPIO object
+	 */
+	private TiGPIO gpioObj = null;
+	/**
+	 * TiADC object, null:no adc
+	 */
+	private TiADC adcObj = null;
+	/**
+	 * TiADCSampler object, null:read the adc directly
+	 */
+	private TiADCSampler samplerObj = null;
+	/**
+	 * Channel index in the sampler
+	 */
+	private int samplerIndex;
+	/**
+	 * TiPinPoller object, null:edge event mode
+	 */
+	private TiPinPoller pollerObj = null;
+	/**
+	 * TiEventLimiter object, null:no limit
+	 */
+	private TiEventLimiter limiterObj = null;
+
+	/**
+	 * TiSignalSensor initialization
+	 * 
+	 * @param gpio
+	 *            TiGPIO object[IN]
+	 * @param signalPinID
+	 *            signal pin id[IN]
+	 * @param adc
+	 *            TiADC object, null:no adc[IN]
+	 * @param analogChannelID
+	 *            analog channel id[IN]
+	 * @param filter
+	 *            event filter time of the signal pin, unit:us[IN]
+	 * @throws IOException
+	 */
+	protected TiSignalSensor(TiGPIO gpio, int signalPinID, TiADC adc, int analogChannelID, int filter)
+			throws IOException {
+		gpio.setWorkMode(signalPinID, TiGPIO.INPUT_FLOATING);
+		gpioObj = gpio;
+		signalPin = signalPinID;
+		adcObj = adc;
+		analogChannel = analogChannelID;
+		eventFilter = filter;
+		eventTime = -1;
+		eventLevel = -1;
+	}
+
+	/**
+	 * Notify the sensor listener of the DOUT change, called with the sensor
+	 * locked
+	 */
+	protected abstract void signalNotify();
+
+	/**
+	 * Notify the sensor listener of the software threshold on AOUT, called
+	 * without the sensor locked
+	 * 
+	 * @param threshold
+	 *            threshold id[IN]
+	 * @param active
+	 *            true:beyond the threshold, false:cleared[IN]
+	 * @param value
+	 *            AOUT raw value[IN]
+	 */
+	protected abstract void analogNotify(int threshold, boolean active, int value);
+
+	@Override
+	public TiEventType getType() {
+		return TiEventType.GPIO;
+	}
+
+	@Override
+	public void onEvent(ITiEvent evt) {
+		synchronized (this) {
+			TiGPIOEvent event = (TiGPIOEvent) evt;
+			if (event.getPin() == signalPin)
+				signalChanged((event.getEvent() == TiGPIO.EVT_RISINGEDGE) ? 1 : 0, event.getTime());
+		}
+	}
+
+	@Override
+	public void onPinChanged(int pin, int level, long time) {
+		synchronized (this) {
+			if (pin != signalPin || pollerObj == null)
+				return;
+			signalChanged(level, time * 1000);
+		}
+	}
+
+	@Override
+	public void onLimitedEvent(TiEventLimiter limiter, int level, long time) {
+		synchronized (this) {
+			if (limiter != limiterObj)
+				return;
+			eventLevel = level;
+			eventTime = time;
+			signalNotify();
+		}
+	}
+
+	@Override
+	public void onThreshold(TiADCSampler sampler, int threshold, boolean active, int value) {
+		synchronized (this) {
+			if (sampler != samplerObj)
+				return;
+		}
+		analogNotify(threshold, active, value);
+	}
+
+	/**
+	 * Notify the listener of the DOUT change, or offer it to the limiter
+	 * 
+	 * @param level
+	 *            DOUT level[IN]
+	 * @param time
+	 *            event time, unit:us[IN]
+	 */
+	private void signalChanged(int level, long time) {
+		if (limiterObj != null && !limiterObj.offer(level, time))
+			return;
+		eventLevel = level;
+		eventTime = time;
+		signalNotify();
+	}
+
+	/**
+	 * Enable or disable the signal pin event, called with the sensor locked
+	 * 
+	 * @param enable
+	 *            true:enable, false:disable[IN]
+	 * @throws IOException
+	 */
+	protected void eventEnable(boolean enable) throws IOException {
+		if (pollerObj != null) {
+			if (enable)
+				pollerObj.attach(signalPin, this);
+			else
+				pollerObj.detach(signalPin);
+		} else if (enable) {
+			gpioObj.setEventParameters(signalPin, TiGPIO.EVT_BOTHEDGE, eventFilter);
+			TiGPIOEventDispatcher.getInstance().attach(signalPin, this);
+		} else {
+			gpioObj.setEventParameters(signalPin, TiGPIO.EVT_NONE, 0);
+			TiGPIOEventDispatcher.getInstance().detach(signalPin, this);
+		}
+		eventEnabled = enable;
+	}
+
+	/**
+	 * Set the polled mode, the signal pin is sampled and debounced by the
+	 * poller instead of the edge events, the event time is the sample time in
+	 * polled mode,<br>
+	 * the sample time is taken from the system clock and the edge time from
+	 * the event clock, so the event time and level are cleared when the mode
+	 * is changed
+	 * 
+	 * @param poller
+	 *            TiPinPoller object, null:edge event mode[IN]
+	 * @throws IOException
+	 */
+	public void setPolledMode(TiPinPoller poller) throws IOException {
+		synchronized (this) {
+			if (poller == pollerObj)
+				return;
+			boolean enabled = eventEnabled;
+			if (enabled)
+				eventEnable(false);
+			pollerObj = poller;
+			eventTime = -1;
+			eventLevel = -1;
+			if (enabled)
+				eventEnable(true);
+		}
+	}
+
+	/**
+	 * Set the rate limit of the notifications, at most one notification per
+	 * window with the latest level and time
+	 * 
+	 * @param interval
+	 *            min interval between notifications, unit:ms[IN]
+	 * @param mode
+	 *            TiEventLimiter.MODE_LEADING, MODE_TRAILING or MODE_BOTH[IN]
+	 * @param rate
+	 *            max notifications per second, 0:no limit[IN]
+	 */
+	public void setRateLimit(int interval, int mode, int rate) {
+		synchronized (this) {
+			if (interval == 0 && rate == 0)
+				limiterObj = null;
+			else
+				limiterObj = new TiEventLimiter(this, interval, mode, rate);
+		}
+	}
+
+	/**
+	 * Gets the number of events dropped by the rate limit
+	 * 
+	 * @return count
+	 */
+	public int getDroppedCount() {
+		synchronized (this) {
+			return (limiterObj == null) ? 0 : limiterObj.getDroppedCount();
+		}
+	}
+
+	/**
+	 * Gets the number of events merged into a later notification by the rate
+	 * limit
+	 * 
+	 * @return count
+	 */
+	public int getMergedCount() {
+		synchronized (this) {
+			return (limiterObj == null) ? 0 : limiterObj.getMergedCount();
+		}
+	}
+
+	/**
+	 * Gets the event time
+	 * 
+	 * @return event time, unit:us
+	 */
+	public long getEventTime() {
+		return eventTime;
+	}
+
+	/**
+	 * Gets the DOUT level of the event notified
+	 * 
+	 * @return level
+	 */
+	public int getEventLevel() {
+		return eventLevel;
+	}
+
+	/**
+	 * Set the ADC sampler, AOUT is sampled in background and the analog
+	 * values are read from the sampler
+	 * 
+	 * @param sampler
+	 *            TiADCSampler object, null:read the adc directly[IN]
+	 * @throws IllegalStateException
+	 *             the sensor is initialized without adc
+	 */
+	public void setSampler(TiADCSampler sampler) {
+		if (adcObj == null)
+			throw new IllegalStateException("no adc.");
+		synchronized (this) {
+			if (samplerObj != null) {
+				samplerObj.removeThresholds(this);
+				samplerObj.unregister(samplerIndex);
+			}
+			samplerObj = sampler;
+			if (sampler != null)
+				samplerIndex = sampler.register(analogChannel);
+		}
+	}
+
+	/**
+	 * Add a software threshold on AOUT, checked by the sampler after each
+	 * sweep, the threshold becomes active when AOUT stays beyond the level for
+	 * the dwell time and is cleared when AOUT stays back within the hysteresis
+	 * band for the dwell time
+	 * 
+	 * @param level
+	 *            threshold level, raw value[IN]
+	 * @param hysteresis
+	 *            hysteresis band, raw value[IN]
+	 * @param dwell
+	 *            dwell time, unit:ms[IN]
+	 * @param rising
+	 *            true:active above the level, false:active below the
+	 *            level[IN]
+	 * @return threshold id, -1:no sampler
+	 */
+	public int addAnalogThreshold(int level, int hysteresis, int dwell, boolean rising) {
+		synchronized (this) {
+			if (samplerObj == null)
+				return -1;
+			return samplerObj.addThreshold(samplerIndex, level, hysteresis, dwell, rising, this);
+		}
+	}
+
+	/**
+	 * Remove a software threshold on AOUT
+	 * 
+	 * @param threshold
+	 *            threshold id[IN]
+	 */
+	public void removeAnalogThreshold(int threshold) {
+		synchronized (this) {
+			if (samplerObj != null)
+				samplerObj.removeThreshold(threshold);
+		}
+	}
+
+	/**
+	 * Check if a software threshold on AOUT is active
+	 * 
+	 * @param threshold
+	 *            threshold id[IN]
+	 * @return true or false
+	 */
+	public boolean isAnalogThresholdActive(int threshold) {
+		synchronized (this) {
+			return samplerObj != null && samplerObj.isThresholdActive(threshold);
+		}
+	}
+
+	/**
+	 * Check if the sensor is initialized with adc
+	 * 
+	 * @return true or false
+	 */
+	protected boolean hasAnalog() {
+		return adcObj != null;
+	}
+
+	/**
+	 * Gets the analog output value of AOUT, the latest sample if the sampler
+	 * is set
+	 * 
+	 * @return raw value
+	 * @throws IOException
+	 */
+	public int getAnalogOutput() throws IOException {
+		if (adcObj == null)
+			return 0;
+
+		synchronized (this) {
+			if (samplerObj != null) {
+				int value = samplerObj.getLatest(samplerIndex);
+				if (value >= 0)
+					return value;
+			}
+		}
+		return adcObj.getRawValue(analogChannel);
+	}
+
+	/**
+	 * Gets the sweep time of the latest AOUT sample from the sampler, the
+	 * sensors on the same sampler share the time of a sweep
+	 * 
+	 * @return time value, unit:ms, -1:no sampler or no sample
+	 */
+	public long getAnalogTime() {
+		synchronized (this) {
+			return (samplerObj == null) ? -1 : samplerObj.getSampleTime(samplerIndex);
+		}
+	}
+
+	/**
+	 * Gets the number of AOUT samples in the sampler window
+	 * 
+	 * @return count, 0:no sampler
+	 */
+	public int getAnalogCount() {
+		synchronized (this) {
+			return (samplerObj == null) ? 0 : samplerObj.getCount(samplerIndex);
+		}
+	}
+
+	/**
+	 * Gets the moving average of AOUT from the sampler
+	 * 
+	 * @return average, 0:no sampler
+	 */
+	public double getAnalogAverage() {
+		synchronized (this) {
+			return (samplerObj == null) ? 0 : samplerObj.getAverage(samplerIndex);
+		}
+	}
+
+	/**
+	 * Gets the exponential moving average of AOUT from the sampler
+	 * 
+	 * @return EMA, 0:no sampler
+	 */
+	public double getAnalogEMA() {
+		synchronized (this) {
+			return (samplerObj == null) ? 0 : samplerObj.getEMA(samplerIndex);
+		}
+	}
+
+	/**
+	 * Gets the min value of AOUT in the sampler window
+	 * 
+	 * @return raw value, -1:no sampler
+	 */
+	public int getAnalogMin() {
+		synchronized (this) {
+			return (samplerObj == null) ? -1 : samplerObj.getMin(samplerIndex);
+		}
+	}
+
+	/**
+	 * Gets the max value of AOUT in the sampler window
+	 * 
+	 * @return raw value, -1:no sampler
+	 */
+	public int getAnalogMax() {
+		synchronized (this) {
+			return (samplerObj == null) ? -1 : samplerObj.getMax(samplerIndex);
+		}
+	}
+
+	/**
+	 * Gets the variance of AOUT in the sampler window
+	 * 
+	 * @return variance, 0:no sampler
+	 */
+	public double getAnalogVariance() {
+		synchronized (this) {
+			return (samplerObj == null) ? 0 : samplerObj.getVariance(samplerIndex);
+		}
+	}
+
+	/**
+	 * Gets the value of DOUT
+	 * 
+	 * @return level
+	 * @throws IOException
+	 */
+	public int getDigitalOutput() throws IOException {
+		return gpioObj.readPin(signalPin);
+	}
+
+	/**
+	 * Gets the signal pin id
+	 * 
+	 * @return pin id
+	 */
+	public int getSignalPinID() {
+		return signalPin;
+	}
+}
@@ -0,0 +1,24 @@
+package tijos.framework.sensor.dht;
+
+import java.io.IOException;
+
+/*
+ * Event listener for TiDHT
+ * 
+ */
+public interface ITiDHTEventListener {
+	/**
+	 * the event is triggered when the asynchronous measurement is completed
+	 * 
+	 * @param dht the dht which temperature and humidity are updated
+	 */
+	public void onMeasured(TiDHT dht);
+
+	/**
+	 * the event is triggered when the asynchronous measurement is failed
+	 * 
+	 * @param dht the dht which measurement is failed
+	 * @param ex the failure reason
+	 */
+	public void onMeasureFailed(TiDHT dht, IOException ex);
+}
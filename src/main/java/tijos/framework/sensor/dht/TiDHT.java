@@ -5,12 +5,28 @@ import java.io.IOException;
 import tijos.framework.devicecenter.TiGPIO;
 import tijos.framework.eventcenter.ITiEvent;
 import tijos.framework.eventcenter.ITiEventListener;
-import tijos.framework.eventcenter.TiEventService;
 import tijos.framework.eventcenter.TiEventType;
 import tijos.framework.eventcenter.TiGPIOEvent;
+import tijos.framework.sensor.common.TiGPIOEventDispatcher;
 import tijos.framework.util.Delay;
 
 public class TiDHT implements ITiEventListener {
+	/**
+	 * TiDHT frame edge number, 3 response edges and 40 data bits
+	 */
+	private static final int FRAME_EDGES = 43;
+	/**
+	 * TiDHT minimum data bit period, unit:us
+	 */
+	private static final int BIT_MIN_PERIOD = 50;
+	/**
+	 * TiDHT maximum data bit period, unit:us
+	 */
+	private static final int BIT_MAX_PERIOD = 200;
+	/**
+	 * TiDHT data bit period threshold of bit 1, unit:us
+	 */
+	private static final int BIT_ONE_PERIOD = 100;
 	/**
 	 * TiDHT pin in id
 	 */
@@ -40,9 +56,17 @@ public class TiDHT implements ITiEventListener {
 	 */
 	private short dhtHumidity;
 	/**
-	 * TiDHT data buffer
+	 * TiDHT humidity shift register
+	 */
+	private int dhtHumidityReg;
+	/**
+	 * TiDHT temperature shift register
+	 */
+	private int dhtTemperatureReg;
+	/**
+	 * TiDHT checksum shift register
 	 */
-	private int[] dhtDelta;
+	private int dhtChecksumReg;
 	/**
 	 * TiDHT data last time;
 	 */
@@ -54,8 +78,35 @@ public class TiDHT implements ITiEventListener {
 	/**
 	 * TiDHT enable flag
 	 */
-	private volatile boolean dhtEnable;	
-	
+	private volatile boolean dhtEnable;
+	/**
+	 * TiDHT frame error flag
+	 */
+	private volatile boolean dhtError;
+	/**
+	 * TiDHT minimum sampling interval, unit:ms
+	 */
+	private int dhtInterval;
+	/**
+	 * TiDHT last trigger time, unit:ms
+	 */
+	private long dhtTriggerTime;
+	/**
+	 * TiDHT last good sample time, unit:ms
+	 */
+	private long dhtSampleTime;
+	/**
+	 * TiDHT measuring flag
+	 */
+	private boolean dhtBusy;
+	/**
+	 * TiDHT asynchronous event listener
+	 */
+	private ITiDHTEventListener dhtLc;
+	/**
+	 * TiDHT asynchronous measurement thread
+	 */
+	private Thread dhtThread;
 
 	@Override
 	public TiEventType getType() {
@@ -69,15 +120,94 @@ public class TiDHT implements ITiEventListener {
 		TiGPIOEvent eventObj = (TiGPIOEvent) evt;
 		if (eventObj.getPin() == (iomode ? dhtPinO : dhtPinI) && eventObj.getEvent() == TiGPIO.EVT_FALLINGEDGE) {
 			long time = eventObj.getTime();
-			if (dhtCount <= 0)
-				dhtLastTime = eventObj.getTime();
-			dhtDelta[dhtCount++] = (int) (time - dhtLastTime);
+			int index = dhtCount++ - 3;
+			if (index >= 0) {
+				int delta = (int) (time - dhtLastTime);
+				if (delta < BIT_MIN_PERIOD || delta > BIT_MAX_PERIOD) {
+					frameEnd(true);
+					return;
+				}
+				int bit = (delta >= BIT_ONE_PERIOD) ? 1 : 0;
+				if (index < 16)
+					dhtHumidityReg = (dhtHumidityReg << 1) | bit;
+				else if (index < 32)
+					dhtTemperatureReg = (dhtTemperatureReg << 1) | bit;
+				else
+					dhtChecksumReg = (dhtChecksumReg << 1) | bit;
+			}
 			dhtLastTime = time;
-			if (dhtCount >= dhtDelta.length) {
-				dhtCount = 0;
-				dhtEnable = false;
+			if (dhtCount >= FRAME_EDGES)
+				frameEnd(false);
+		}
+	}
+
+	/**
+	 * Finish the current frame and wake up the measuring thread
+	 * 
+	 * @param error
+	 *            true:the frame is aborted, false:the frame is completed
+	 */
+	private void frameEnd(boolean error) {
+		dhtCount = 0;
+		synchronized (this) {
+			dhtError = error;
+			dhtEnable = false;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Execute the asynchronous measurement requests, the thread exits when no
+	 * request is pending
+	 */
+	private void asyncLoop() {
+		try {
+			for (;;) {
+				ITiDHTEventListener lc;
+				synchronized (this) {
+					if (dhtLc == null) {
+						dhtThread = null;
+						return;
+					}
+					lc = dhtLc;
+				}
+				IOException error = null;
+				try {
+					measure();
+				} catch (IOException e) {
+					error = e;
+				}
+				synchronized (this) {
+					dhtLc = null;
+					notifyAll();
+				}
+				if (error == null)
+					lc.onMeasured(this);
+				else
+					lc.onMeasureFailed(this, error);
+			}
+		} finally {
+			// the listener threw, hand a request queued meanwhile to a new thread
+			synchronized (this) {
+				if (dhtThread == Thread.currentThread()) {
+					dhtThread = null;
+					if (dhtLc != null)
+						asyncStart();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Start the asynchronous measurement thread
+	 */
+	private void asyncStart() {
+		dhtThread = new Thread(new Runnable() {
+			public void run() {
+				asyncLoop();
 			}
-		}	
+		});
+		dhtThread.start();
 	}
 
 	/**
@@ -88,6 +218,8 @@ public class TiDHT implements ITiEventListener {
 	 * @param ioPinID
 	 *            data I/O pin id[IN]
 	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             the data pin is used by another driver, close() it first
 	 */
 	public TiDHT(TiGPIO gpio, int ioPinID) throws IOException {
 		this(gpio, -1, ioPinID, false);
@@ -103,6 +235,8 @@ public class TiDHT implements ITiEventListener {
 	 * @param outPinID
 	 *            data out pin id[IN]
 	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             the data pin is used by another driver, close() it first
 	 */
 	public TiDHT(TiGPIO gpio, int inPinID, int outPinID) throws IOException {
 		this(gpio, inPinID, outPinID, false);
@@ -118,6 +252,8 @@ public class TiDHT implements ITiEventListener {
 	 * @param model22
 	 *            true:DHT22, false:DHT11
 	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             the data pin is used by another driver, close() it first
 	 */
 	public TiDHT(TiGPIO gpio, int ioPinID, boolean model22) throws IOException {
 		this(gpio, -1, ioPinID, model22 ? 1 : 0);
@@ -135,6 +271,8 @@ public class TiDHT implements ITiEventListener {
 	 * @param model22
 	 *            true:DHT22, false:DHT11
 	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             the data pin is used by another driver, close() it first
 	 */
 	public TiDHT(TiGPIO gpio, int inPinID, int outPinID, boolean model22) throws IOException {
 		this(gpio, inPinID, outPinID, model22 ? 1 : 0);
@@ -152,6 +290,8 @@ public class TiDHT implements ITiEventListener {
 	 * @param model22
 	 *            true:DHT22, false:DHT11
 	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             the data pin is used by another driver, close() it first
 	 */
 	private TiDHT(TiGPIO gpio, int inPinID, int outPinID, int model) throws IOException {
 		if(inPinID < 0) {
@@ -166,72 +306,161 @@ public class TiDHT implements ITiEventListener {
 		gpio.setWorkMode(outPinID, TiGPIO.OUTPUT_OD);
 		gpio.writePin(outPinID, 1);
 		gpio.setEventParameters(iomode ? outPinID : inPinID, TiGPIO.EVT_FALLINGEDGE, 45);// >=45us
-		TiEventService.getInstance().addListener(this);
+		TiGPIOEventDispatcher.getInstance().attach(iomode ? outPinID : inPinID, this);
 		gpioObj = gpio;
 		dhtPinI = inPinID;
 		dhtPinO = outPinID;
-		dhtDelta = new int[43];
 		dhtCount = 0;
 		dhtTemperature = -1;
 		dhtHumidity = -1;
 		dht22 = (model > 0) ? true : false;
+		dhtInterval = dht22 ? 2000 : 1000;
+		dhtTriggerTime = -1;
+		dhtSampleTime = -1;
 		dhtEnable = false;
 	}
 
 	/**
-	 * Startup humiture measurement
+	 * Release the data pin, the pin event is disabled and the driver is
+	 * detached, a new TiDHT can be created on the pin afterwards
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		int pin = iomode ? dhtPinO : dhtPinI;
+		synchronized (this) {
+			gpioObj.setEventParameters(pin, TiGPIO.EVT_NONE, 0);
+			TiGPIOEventDispatcher.getInstance().detach(pin, this);
+		}
+	}
+
+	/**
+	 * Startup humiture measurement, the calling thread sleeps until the frame
+	 * is received,<br>
+	 * the bits are decoded as the edges arrive and a frame with invalid bit
+	 * period is aborted at once, the sensor is never triggered faster than the
+	 * minimum sampling interval of the model(DHT11:1s, DHT22:2s), the caller
+	 * waits for the rest of the interval
 	 * 
 	 * @throws IOException
 	 */
 	public void measure() throws IOException {
-		short temperature = 0;
-		short humidity = 0;
-		int currTime = (int) System.currentTimeMillis();
 		synchronized (this) {
-			dhtCount = 0;
-			dhtEnable = true;
-			gpioObj.writePin(dhtPinO, 0);
-			Delay.msDelay(18);
-			gpioObj.writePin(dhtPinO, 1);
-			for (;;) {
-				if ((int) System.currentTimeMillis() - currTime > 500)
-				{
-					throw new IOException("time out.");
+			try {
+				for (;;) {
+					if (dhtBusy) {
+						wait();
+						continue;
+					}
+					long timeLeft = dhtTriggerTime + dhtInterval - System.currentTimeMillis();
+					if (dhtTriggerTime < 0 || timeLeft <= 0)
+						break;
+					wait(timeLeft);
 				}
-				
-				if (dhtEnable) {
-					Thread.yield();
-					continue;
-				}
-				for (int i = 0; i < 16; i++) {
-					humidity <<= 1;
-					temperature <<= 1;
-					int t = dhtDelta[3 + i];
-					if (t >= 100)
-						humidity |= 1;
-					t = dhtDelta[3 + 16 + i];
-					if (t >= 100)
-						temperature |= 1;
+			} catch (InterruptedException e) {
+				throw new IOException("interrupted.");
+			}
+			dhtBusy = true;
+			try {
+				dhtTriggerTime = System.currentTimeMillis();
+				long deadline = dhtTriggerTime + 500;
+				dhtCount = 0;
+				dhtHumidityReg = 0;
+				dhtTemperatureReg = 0;
+				dhtChecksumReg = 0;
+				dhtError = false;
+				dhtEnable = true;
+				gpioObj.writePin(dhtPinO, 0);
+				Delay.msDelay(18);
+				gpioObj.writePin(dhtPinO, 1);
+				while (dhtEnable) {
+					long timeLeft = deadline - System.currentTimeMillis();
+					if (timeLeft <= 0) {
+						dhtEnable = false;
+						throw new IOException("time out.");
+					}
+					try {
+						wait(timeLeft);
+					} catch (InterruptedException e) {
+						dhtEnable = false;
+						throw new IOException("interrupted.");
+					}
 				}
-				int dhtChecksum = 0;
-				for (int i = 0; i < 8; i++) {
-					dhtChecksum <<= 1;
-					int t = dhtDelta[3 + 32 + i];
-					if (t >= 100)
-						dhtChecksum |= 1;
+				if (dhtError) {
+					throw new IOException("data error.");
 				}
-				int dhtSum = (temperature & 0xff) + (temperature >> 8) + (humidity & 0xff) + (humidity >> 8);
-				if(dhtChecksum != dhtSum)
-				{
+				int dhtSum = (dhtTemperatureReg & 0xff) + (dhtTemperatureReg >> 8) + (dhtHumidityReg & 0xff)
+						+ (dhtHumidityReg >> 8);
+				if (dhtChecksumReg != (dhtSum & 0xff)) {
 					throw new IOException("checksum error.");
 				}
-				dhtTemperature = temperature;
-				dhtHumidity = humidity;
-				break;
+				dhtTemperature = (short) dhtTemperatureReg;
+				dhtHumidity = (short) dhtHumidityReg;
+				dhtSampleTime = System.currentTimeMillis();
+			} finally {
+				dhtBusy = false;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Read humiture with cache,<br>
+	 * the last good sample is kept if it is not older than maxAge, otherwise
+	 * the caller joins the measurement in progress or starts a new one after
+	 * the minimum sampling interval of the model(DHT11:1s, DHT22:2s)
+	 * 
+	 * @param maxAge
+	 *            max age of the sample, unit:ms[IN]
+	 * @throws IOException
+	 */
+	public void read(int maxAge) throws IOException {
+		synchronized (this) {
+			try {
+				for (;;) {
+					long now = System.currentTimeMillis();
+					if (dhtSampleTime >= 0 && now - dhtSampleTime <= maxAge)
+						return;
+					if (dhtBusy) {
+						wait();
+						continue;
+					}
+					long timeLeft = dhtTriggerTime + dhtInterval - now;
+					if (dhtTriggerTime >= 0 && timeLeft > 0) {
+						wait(timeLeft);
+						continue;
+					}
+					measure();
+					return;
+				}
+			} catch (InterruptedException e) {
+				throw new IOException("interrupted.");
 			}
 		}
 	}
 
+	/**
+	 * Startup humiture measurement asynchronously,<br>
+	 * the listener is notified from a background thread when the measurement is
+	 * completed or failed
+	 * 
+	 * @param lc
+	 *            listener object[IN]
+	 * @throws IOException
+	 *             the previous asynchronous measurement is not completed
+	 */
+	public void measureAsync(ITiDHTEventListener lc) throws IOException {
+		if (lc == null)
+			throw new IllegalArgumentException("null listener.");
+		synchronized (this) {
+			if (dhtLc != null)
+				throw new IOException("busy.");
+			dhtLc = lc;
+			if (dhtThread == null)
+				asyncStart();
+		}
+	}
+
 	/**
 	 * Get the temperature
 	 * 
@@ -258,6 +487,17 @@ public class TiDHT implements ITiEventListener {
 		}
 	}
 
+	/**
+	 * Gets the time of the last good sample, unit:ms
+	 * 
+	 * @return time value, -1:no sample
+	 */
+	public long getSampleTime() {
+		synchronized (this) {
+			return dhtSampleTime;
+		}
+	}
+
 	/**
 	 * Gets the I/O pin id
 	 * 
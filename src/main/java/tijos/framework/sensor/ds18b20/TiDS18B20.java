@@ -7,6 +7,18 @@ import tijos.framework.util.Delay;
 import tijos.framework.util.crc.CRC8;
 
 public class TiDS18B20 {
+	/**
+	 * TiDS18B20 conversion status polling interval, unit:ms
+	 */
+	private static final int POLL_INTERVAL = 10;
+	/**
+	 * TiDS18B20 retry number of a search branch with CRC error
+	 */
+	private static final int SEARCH_RETRY = 3;
+	/**
+	 * Transaction sequence of each io, shared by all instances
+	 */
+	private static int[] ioSequence = new int[0];
 	/**
 	 * TiDS18B20 io id
 	 */
@@ -20,13 +32,284 @@ public class TiDS18B20 {
 	 */
 	private int dsWaitTime;
 	/**
-	 * TiDS18B20 rom list
+	 * TiDS18B20 selected device ROM, null:Skip ROM
+	 */
+	private TiDS18B20ROM dsRom;
+	/**
+	 * TiDS18B20 Match ROM command frame buffer, built under the bus lock
 	 */
-	private byte[] dsROM;
+	private byte[] dsFrame;
+	/**
+	 * TiDS18B20 scratchpad read buffer, 8 bytes and CRC
+	 */
+	private byte[] dsBuffer;
 	/**
 	 * TiOWMaster object
 	 */
 	private TiOWMaster owObj;
+	/**
+	 * TiDS18B20 conversion completion polling flag
+	 */
+	private boolean dsPolling;
+	/**
+	 * TiDS18B20 conversion in progress flag
+	 */
+	private boolean dsConverting;
+	/**
+	 * TiDS18B20 device ROM of the conversion in progress, null:Skip ROM
+	 */
+	private TiDS18B20ROM dsConvRom;
+	/**
+	 * TiDS18B20 transaction sequence of the conversion in progress
+	 */
+	private int dsConvSequence;
+	/**
+	 * TiDS18B20 deadline of the conversion in progress, unit:ms
+	 */
+	private long dsConvDeadline;
+	/**
+	 * TiDS18B20 search command, 0xf0:Search ROM, 0xec:Alarm Search
+	 */
+	private int srchCmd;
+	/**
+	 * TiDS18B20 ROM found by the last search pass
+	 */
+	private long srchROM;
+	/**
+	 * TiDS18B20 last discrepancy bit position of the search, 1-64, 0:none
+	 */
+	private int srchDiscrepancy;
+	/**
+	 * TiDS18B20 last device found flag of the search
+	 */
+	private boolean srchLast;
+	/**
+	 * TiDS18B20 device number found by the search
+	 */
+	private int srchCount;
+	/**
+	 * TiDS18B20 search CRC buffer
+	 */
+	private byte[] srchBuffer;
+
+	/**
+	 * Increase the transaction sequence of the io
+	 * 
+	 * @param io
+	 *            io id[IN]
+	 * @return new sequence
+	 */
+	private static synchronized int ioBegin(int io) {
+		if (io >= ioSequence.length) {
+			int[] sequence = new int[io + 1];
+			System.arraycopy(ioSequence, 0, sequence, 0, ioSequence.length);
+			ioSequence = sequence;
+		}
+		return ++ioSequence[io];
+	}
+
+	/**
+	 * Gets the transaction sequence of the io
+	 * 
+	 * @param io
+	 *            io id[IN]
+	 * @return current sequence
+	 */
+	private static synchronized int ioCurrent(int io) {
+		return (io < ioSequence.length) ? ioSequence[io] : 0;
+	}
+
+	/**
+	 * Reset the bus and address the device with the Match ROM command frame in
+	 * one bulk write, Skip ROM if the ROM is null, the caller must lock the
+	 * bus
+	 * 
+	 * @param rom
+	 *            device ROM object or null[IN]
+	 * @return transaction sequence
+	 * @throws IOException
+	 */
+	private int romSelect(TiDS18B20ROM rom) throws IOException {
+		int sequence = ioBegin(dsIo);
+		owObj.reset(dsIo);
+		if (rom == null) {
+			owObj.writeBits(dsIo, 0xcc, 8);
+		} else {
+			long value = rom.getValue();
+			dsFrame[0] = (byte) 0x55;
+			for (int i = 1; i < 9; i++) {
+				dsFrame[i] = (byte) value;
+				value >>>= 8;
+			}
+			owObj.write(dsIo, dsFrame, 0, dsFrame.length);
+		}
+		return sequence;
+	}
+
+	/**
+	 * Start the conversion on the addressed device(s)
+	 * 
+	 * @param rom
+	 *            device ROM object or null[IN]
+	 * @return transaction sequence
+	 * @throws IOException
+	 */
+	private int conversionStart(TiDS18B20ROM rom) throws IOException {
+		int sequence = romSelect(rom);
+		owObj.writeBits(dsIo, 0x44, 8);
+		return sequence;
+	}
+
+	/**
+	 * Check the conversion status slot without waiting, the caller must lock
+	 * the bus
+	 * 
+	 * @param sequence
+	 *            transaction sequence of the conversion[IN]
+	 * @return true:completed, false:in progress or unknown
+	 * @throws IOException
+	 */
+	private boolean conversionDone(int sequence) throws IOException {
+		if (ioCurrent(dsIo) != sequence)
+			return false;
+		return owObj.readBits(dsIo, 1) != 0;
+	}
+
+	/**
+	 * Wait for the conversion started by the transaction,<br>
+	 * the bus is locked only while reading the status slot, if another
+	 * transaction on the same io intervenes or polling is disabled, the rest
+	 * of the conversion time is waited
+	 * 
+	 * @param sequence
+	 *            transaction sequence of the conversion[IN]
+	 * @param deadline
+	 *            conversion deadline, unit:ms[IN]
+	 * @throws IOException
+	 */
+	private void conversionWait(int sequence, long deadline) throws IOException {
+		while (dsPolling) {
+			long timeLeft = deadline - System.currentTimeMillis();
+			if (timeLeft <= 0)
+				return;
+			Delay.msDelay(timeLeft < POLL_INTERVAL ? (int) timeLeft : POLL_INTERVAL);
+			synchronized (owObj) {
+				if (ioCurrent(dsIo) != sequence)
+					break;
+				if (conversionDone(sequence))
+					return;
+			}
+		}
+		long timeLeft = deadline - System.currentTimeMillis();
+		if (timeLeft > 0)
+			Delay.msDelay((int) timeLeft);
+	}
+
+	/**
+	 * Read the temperature from the scratchpad of the addressed device
+	 * 
+	 * @param rom
+	 *            device ROM object or null[IN]
+	 * @return temperature value
+	 * @throws IOException
+	 */
+	private double scratchpadRead(TiDS18B20ROM rom) throws IOException {
+		romSelect(rom);
+		owObj.writeBits(dsIo, 0xbe, 8);
+		owObj.read(dsIo, dsBuffer, 0, 2);
+		short temperature = (short) ((dsBuffer[0] & 0xff) | (dsBuffer[1] << 8));
+		return temperature * 0.0625;
+	}
+
+	/**
+	 * Read the whole scratchpad of the addressed device into the read
+	 * buffer, TH, TL and configuration register are at 2, 3 and 4
+	 * 
+	 * @param rom
+	 *            device ROM object or null[IN]
+	 * @throws IOException
+	 */
+	private void scratchpadLoad(TiDS18B20ROM rom) throws IOException {
+		romSelect(rom);
+		owObj.writeBits(dsIo, 0xbe, 8);
+		owObj.read(dsIo, dsBuffer, 0, 9);
+		if ((dsBuffer[4] & 0x9f) != 0x1f)
+			throw new IOException("no response.");
+		if (CRC8.compute(dsBuffer) != 0)
+			throw new IOException("crc error.");
+	}
+
+	/**
+	 * Write TH, TL and configuration register to the scratchpad of the
+	 * addressed device
+	 * 
+	 * @param rom
+	 *            device ROM object or null[IN]
+	 * @param high
+	 *            alarm high threshold(TH)[IN]
+	 * @param low
+	 *            alarm low threshold(TL)[IN]
+	 * @param config
+	 *            configuration register[IN]
+	 * @throws IOException
+	 */
+	private void scratchpadWrite(TiDS18B20ROM rom, int high, int low, int config) throws IOException {
+		romSelect(rom);
+		byte[] cmds = { (byte) 0x4e, (byte) high, (byte) low, (byte) config };
+		owObj.write(dsIo, cmds, 0, cmds.length);
+	}
+
+	/**
+	 * Search pass along the branch of the last discrepancy, the caller must
+	 * lock the bus
+	 * 
+	 * @return 1:device found, 0:no device, -1:CRC error, -2:no response, the
+	 *         branch is not consumed
+	 * @throws IOException
+	 */
+	private int searchPass() throws IOException {
+		ioBegin(dsIo);
+		owObj.reset(dsIo);
+		owObj.writeBits(dsIo, srchCmd, 8);
+		long rom = 0;
+		int lastZero = 0;
+		for (int bit = 1; bit <= 64; bit++) {
+			long bitMask = 1L << (bit - 1);
+			int direction;
+			switch (owObj.readBits(dsIo, 2)) {
+			case 0x00:
+				if (bit < srchDiscrepancy)
+					direction = ((srchROM & bitMask) != 0) ? 1 : 0;
+				else
+					direction = (bit == srchDiscrepancy) ? 1 : 0;
+				if (direction == 0)
+					lastZero = bit;
+				break;
+			case 0x01:
+				direction = 1;
+				break;
+			case 0x02:
+				direction = 0;
+				break;
+			default:
+				// no device answers, the bus is empty or a device is lost
+				return (bit == 1 && srchCount == 0) ? 0 : -2;
+			}
+			if (direction != 0)
+				rom |= bitMask;
+			owObj.writeBits(dsIo, direction, 1);
+		}
+		for (int i = 0; i < 8; i++) {
+			srchBuffer[i] = (byte) (rom >>> (i * 8));
+		}
+		if (CRC8.compute(srchBuffer) != 0)
+			return -1;
+		srchROM = rom;
+		srchDiscrepancy = lastZero;
+		srchLast = (lastZero == 0);
+		srchCount++;
+		return 1;
+	}
 
 	/**
 	 * TiDS18B20 initialization
@@ -43,72 +326,151 @@ public class TiDS18B20 {
 		owObj = ow;
 		dsBits = 12;
 		dsWaitTime = 800;
-		dsROM = null;
+		dsRom = null;
+		dsFrame = new byte[9];
+		dsBuffer = new byte[9];
+		dsPolling = false;
+		srchBuffer = new byte[8];
+		srchLast = true;
 	}
 
 	/**
-	 * Device enumeration, maximum support 8
+	 * Start a new search from the first device,<br>
+	 * the bus is locked only during each search pass, a pass with CRC error
+	 * or a device lost is retried on the same branch
 	 * 
-	 * @return device ROM object list
+	 * @param alarm
+	 *            true:Alarm Search, only the devices in alarm are found,
+	 *            false:Search ROM[IN]
+	 * @return true:device found, false:no device
 	 * @throws IOException
 	 */
-	public TiDS18B20ROM[] enumeration() throws IOException {
-		int maxCount = 8, count = 0;
-		long contentiousMask = 0;
-		TiDS18B20ROM[] list = new TiDS18B20ROM[maxCount];
+	public boolean searchFirst(boolean alarm) throws IOException {
 		synchronized (owObj) {
-			do {
-				long romCode = 0;
-				owObj.reset(dsIo);
-				owObj.writeBits(dsIo, 0xf0, 8);
-				int bitsLoop = 64;
-				long bitMask = 1;
-				while (bitsLoop-- > 0) {
-					switch (owObj.readBits(dsIo, 2)) {
-					case 0x00:
-						if ((contentiousMask & bitMask) > 0) {
-							if ((contentiousMask & ~((bitMask << 1) - 1)) > 0) {
-								owObj.writeBits(dsIo, 0, 1);
-							} else {
-								romCode |= bitMask;
-								contentiousMask ^= bitMask;
-								owObj.writeBits(dsIo, 1, 1);
-							}
-						} else {
-							contentiousMask |= bitMask;
-							owObj.writeBits(dsIo, 0, 1);
-						}
-						break;
-					case 0x01:
-						romCode |= bitMask;
-						owObj.writeBits(dsIo, 1, 1);
-						break;
-					case 0x02:
-						owObj.writeBits(dsIo, 0, 1);
-						break;
-					default:
-						return null;
-					}
-					bitMask <<= 1;
-				}
-				byte[] code = new byte[8];
-				for (int i = 0; i < 8; i++) {
-					code[i] = (byte) (romCode & 0xff);
-					romCode >>= 8;
+			srchCmd = alarm ? 0xec : 0xf0;
+			srchROM = 0;
+			srchDiscrepancy = 0;
+			srchLast = false;
+			srchCount = 0;
+		}
+		return searchNext();
+	}
+
+	/**
+	 * Resume the search from the last device found
+	 * 
+	 * @return true:device found, false:no more device
+	 * @throws IOException
+	 */
+	public boolean searchNext() throws IOException {
+		synchronized (owObj) {
+			if (srchLast)
+				return false;
+			for (int retry = 0;; retry++) {
+				int result = searchPass();
+				if (result > 0)
+					return true;
+				if (result == 0) {
+					srchLast = true;
+					return false;
 				}
-				if (CRC8.compute(code) == ((romCode >> 56) & 0xff)) {
-					list[count] = new TiDS18B20ROM(romCode);
-					count++;
-				} else {
-					maxCount--;
+				if (retry >= SEARCH_RETRY)
+					throw new IOException((result == -1) ? "crc error." : "no response.");
+			}
+		}
+	}
+
+	/**
+	 * Gets the ROM of the device found by the last searchFirst or searchNext
+	 * 
+	 * @return ROM integer
+	 */
+	public long getSearchROM() {
+		synchronized (owObj) {
+			return srchROM;
+		}
+	}
+
+	/**
+	 * Search all the devices on the bus, no limit of the device number
+	 * 
+	 * @param alarm
+	 *            true:Alarm Search, false:Search ROM[IN]
+	 * @return ROM integer list
+	 * @throws IOException
+	 */
+	public long[] search(boolean alarm) throws IOException {
+		long[] list = new long[8];
+		int count = 0;
+		if (searchFirst(alarm)) {
+			do {
+				if (count >= list.length) {
+					long[] grow = new long[list.length * 2];
+					System.arraycopy(list, 0, grow, 0, count);
+					list = grow;
 				}
-			} while (count < maxCount && contentiousMask > 0);
+				list[count++] = getSearchROM();
+			} while (searchNext());
+		}
+		long[] searchList = new long[count];
+		System.arraycopy(list, 0, searchList, 0, count);
+		return searchList;
+	}
+
+	/**
+	 * Device enumeration
+	 * 
+	 * @return device ROM object list
+	 * @throws IOException
+	 */
+	public TiDS18B20ROM[] enumeration() throws IOException {
+		return romList(search(false));
+	}
+
+	/**
+	 * Device enumeration of the devices in alarm,<br>
+	 * the alarm flag is updated by each temperature conversion against the
+	 * TH/TL thresholds
+	 * 
+	 * @return device ROM object list
+	 * @throws IOException
+	 */
+	public TiDS18B20ROM[] alarmEnumeration() throws IOException {
+		return romList(search(true));
+	}
+
+	/**
+	 * Convert ROM integer list to ROM object list
+	 * 
+	 * @param roms
+	 *            ROM integer list[IN]
+	 * @return device ROM object list
+	 */
+	private static TiDS18B20ROM[] romList(long[] roms) {
+		TiDS18B20ROM[] list = new TiDS18B20ROM[roms.length];
+		for (int i = 0; i < roms.length; i++) {
+			list[i] = new TiDS18B20ROM(roms[i]);
 		}
-		TiDS18B20ROM[] enumList = new TiDS18B20ROM[count];
-		for (int i = 0; i < count; i++) {
-			enumList[i] = list[i];
+		return list;
+	}
+
+	/**
+	 * Check if the device is present on the bus by Match ROM,<br>
+	 * the fixed bits of the configuration register are checked, an absent
+	 * device reads all ones
+	 * 
+	 * @param rom
+	 *            device ROM object[IN]
+	 * @return true or false
+	 * @throws IOException
+	 */
+	public boolean isPresent(TiDS18B20ROM rom) throws IOException {
+		synchronized (owObj) {
+			romSelect(rom);
+			owObj.writeBits(dsIo, 0xbe, 8);
+			owObj.read(dsIo, dsBuffer, 0, 5);
+			return (dsBuffer[4] & 0x9f) == 0x1f;
 		}
-		return enumList;
 	}
 
 	/**
@@ -119,7 +481,7 @@ public class TiDS18B20 {
 	 */
 	public void select(TiDS18B20ROM rom) {
 		synchronized (owObj) {
-			dsROM = rom.getRomData();
+			dsRom = rom;
 		}
 		return;
 	}
@@ -130,7 +492,7 @@ public class TiDS18B20 {
 	 */
 	public void selectSingle() {
 		synchronized (owObj) {
-			dsROM = null;
+			dsRom = null;
 		}
 		return;
 	}
@@ -141,17 +503,16 @@ public class TiDS18B20 {
 	 * @throws IOException
 	 */
 	public void measure() throws IOException {
-		synchronized (owObj) {
-			owObj.reset(dsIo);
-			if (dsROM == null || dsROM.length != 8) {
-				owObj.writeBits(dsIo, 0xcc, 8);
-			} else {
-				owObj.writeBits(dsIo, 0x55, 8);
-				for (int i = 0; i < 8; i++) {
-					owObj.writeBits(dsIo, dsROM[i] & 0xff, 8);
-				}
+		if (dsPolling) {
+			int sequence;
+			synchronized (owObj) {
+				sequence = conversionStart(dsRom);
 			}
-			owObj.writeBits(dsIo, 0x44, 8);
+			conversionWait(sequence, System.currentTimeMillis() + dsWaitTime);
+			return;
+		}
+		synchronized (owObj) {
+			conversionStart(dsRom);
 			Delay.msDelay(dsWaitTime);
 		}
 	}
@@ -163,27 +524,103 @@ public class TiDS18B20 {
 	 * @throws IOException
 	 */
 	public double getTemperature() throws IOException {
-		short temperature;
-		synchronized (owObj) {
-			owObj.reset(dsIo);
-			if (dsROM == null || dsROM.length != 8) {
-				owObj.writeBits(dsIo, 0xcc, 8);
-			} else {
-				owObj.writeBits(dsIo, 0x55, 8);
-				for (int i = 0; i < 8; i++) {
-					owObj.writeBits(dsIo, dsROM[i] & 0xff, 8);
-				}
+		synchronized (owObj) {
+			return scratchpadRead(dsRom);
+		}
+	}
+
+	/**
+	 * Start the temperature conversion of the selected device and return at
+	 * once,<br>
+	 * the bus is locked only while sending the command, the result is
+	 * collected by readResult
+	 * 
+	 * @throws IOException
+	 */
+	public void startConversion() throws IOException {
+		synchronized (owObj) {
+			dsConvSequence = conversionStart(dsRom);
+			dsConvDeadline = System.currentTimeMillis() + dsWaitTime;
+			dsConvRom = dsRom;
+			dsConverting = true;
+		}
+	}
+
+	/**
+	 * Check if the conversion started by startConversion is completed,<br>
+	 * the status slot is read in polling mode, otherwise the conversion time
+	 * of the current resolution is checked
+	 * 
+	 * @return true or false
+	 * @throws IOException
+	 */
+	public boolean isConversionReady() throws IOException {
+		synchronized (owObj) {
+			if (!dsConverting || System.currentTimeMillis() >= dsConvDeadline)
+				return true;
+			return dsPolling && conversionDone(dsConvSequence);
+		}
+	}
+
+	/**
+	 * Gets the temperature of the conversion started by startConversion,<br>
+	 * wait for the rest of the conversion if it is not completed
+	 * 
+	 * @return temperature value
+	 * @throws IOException
+	 */
+	public double readResult() throws IOException {
+		int sequence;
+		long deadline;
+		synchronized (owObj) {
+			if (!dsConverting)
+				throw new IOException("no conversion.");
+			sequence = dsConvSequence;
+			deadline = dsConvDeadline;
+		}
+		conversionWait(sequence, deadline);
+		synchronized (owObj) {
+			dsConverting = false;
+			return scratchpadRead(dsConvRom);
+		}
+	}
+
+	/**
+	 * Startup temperature measurement of all devices on the bus with one
+	 * broadcast conversion,<br>
+	 * then read the temperature of each device in the list, the conversion
+	 * time of the current resolution is waited once
+	 * 
+	 * @param roms
+	 *            device ROM object list[IN]
+	 * @return temperature value list, in the same order as the ROM list
+	 * @throws IOException
+	 */
+	public double[] measureAll(TiDS18B20ROM[] roms) throws IOException {
+		double[] temperatures = new double[roms.length];
+		if (dsPolling) {
+			int sequence;
+			synchronized (owObj) {
+				sequence = conversionStart(null);
+			}
+			conversionWait(sequence, System.currentTimeMillis() + dsWaitTime);
+		} else {
+			synchronized (owObj) {
+				conversionStart(null);
+				Delay.msDelay(dsWaitTime);
 			}
-			owObj.writeBits(dsIo, 0xbe, 8);
-			short tmpL = (short) owObj.readBits(dsIo, 8);
-			short tmpH = (short) owObj.readBits(dsIo, 8);
-			temperature = (short) (tmpL | (tmpH << 8));
 		}
-		return temperature * 0.0625;
+		synchronized (owObj) {
+			for (int i = 0; i < roms.length; i++) {
+				temperatures[i] = scratchpadRead(roms[i]);
+			}
+		}
+		return temperatures;
 	}
 
 	/**
-	 * Set the resolution
+	 * Set the resolution of the selected device, TH and TL of the device are
+	 * kept
 	 * 
 	 * @param bits
 	 *            the resolution bit number, 9/10/11/12
@@ -197,15 +634,6 @@ public class TiDS18B20 {
 			throw new IllegalArgumentException("unsupported bits.");
 		
 		synchronized (owObj) {
-			owObj.reset(dsIo);
-			if (dsROM == null || dsROM.length != 8) {
-				owObj.writeBits(dsIo, 0xcc, 8);
-			} else {
-				owObj.writeBits(dsIo, 0x55, 8);
-				for (int i = 0; i < 8; i++) {
-					owObj.writeBits(dsIo, dsROM[i] & 0xff, 8);
-				}
-			}
 			switch (bits) {
 			case 9:
 				dsbits = 9;
@@ -228,15 +656,58 @@ public class TiDS18B20 {
 				dsacc = 0x7f;
 				break;
 			}
-			owObj.writeBits(dsIo, 0x4e, 8);
-			owObj.writeBits(dsIo, 75, 8);
-			owObj.writeBits(dsIo, 70, 8);
-			owObj.writeBits(dsIo, dsacc, 8);
+			scratchpadLoad(dsRom);
+			scratchpadWrite(dsRom, dsBuffer[2], dsBuffer[3], dsacc);
 			dsBits = dsbits;
 			dsWaitTime = dswait;
 		}
 	}
 
+	/**
+	 * Set the alarm thresholds of the selected device, the devices out of the
+	 * range after a conversion are found by Alarm Search, the resolution of
+	 * the device is kept
+	 * 
+	 * @param high
+	 *            alarm high threshold(TH), range:-55-125, unit:C[IN]
+	 * @param low
+	 *            alarm low threshold(TL), range:-55-125, unit:C[IN]
+	 * @throws IOException
+	 */
+	public void setAlarmThreshold(int high, int low) throws IOException {
+		if (high < -55 || high > 125 || low < -55 || low > 125 || low > high)
+			throw new IllegalArgumentException("unsupported threshold.");
+
+		synchronized (owObj) {
+			scratchpadLoad(dsRom);
+			scratchpadWrite(dsRom, high, low, dsBuffer[4]);
+		}
+	}
+
+	/**
+	 * Set the conversion completion polling mode,<br>
+	 * the device reports the completion through the read time slots and the
+	 * bus is released between the polls, not available for parasite powered
+	 * device
+	 * 
+	 * @param enable
+	 *            true:polling, false:fixed delay, default:false[IN]
+	 */
+	public void setConversionPolling(boolean enable) {
+		synchronized (owObj) {
+			dsPolling = enable;
+		}
+	}
+
+	/**
+	 * Check if the conversion completion polling mode is enabled
+	 * 
+	 * @return true or false
+	 */
+	public boolean isConversionPolling() {
+		return dsPolling;
+	}
+
 	/**
 	 * Gets the current resolution
 	 * 
@@ -2,9 +2,9 @@ package tijos.framework.sensor.ds18b20;
 
 public class TiDS18B20ROM {
 	/**
-	 * TiDS18B20ROM rom data
+	 * TiDS18B20ROM rom integer
 	 */
-	private byte[] dsRom = null;
+	private long dsValue;
 
 	/**
 	 * TiDS18B20ROM initialization
@@ -13,24 +13,29 @@ public class TiDS18B20ROM {
 	 *            rom integer[IN]
 	 */
 	public TiDS18B20ROM(long rom) {
-		dsRom = new byte[8];
-		dsRom[0] = (byte) (rom & 0xff);
-		dsRom[1] = (byte) ((rom >> 8) & 0xff);
-		dsRom[2] = (byte) ((rom >> 16) & 0xff);
-		dsRom[3] = (byte) ((rom >> 24) & 0xff);
-		dsRom[4] = (byte) ((rom >> 32) & 0xff);
-		dsRom[5] = (byte) ((rom >> 40) & 0xff);
-		dsRom[6] = (byte) ((rom >> 48) & 0xff);
-		dsRom[7] = (byte) ((rom >> 56) & 0xff);
+		dsValue = rom;
 	}
 
 	/**
-	 * Gets the ROM data, 64bits
+	 * Gets the ROM data, 64bits, a new array on each call
 	 * 
 	 * @return ROM data
 	 */
 	public byte[] getRomData() {
-		return dsRom;
+		byte[] data = new byte[8];
+		for (int i = 0; i < 8; i++) {
+			data[i] = (byte) (dsValue >>> (i * 8));
+		}
+		return data;
+	}
+
+	/**
+	 * Gets the ROM integer, 64bits
+	 * 
+	 * @return ROM integer
+	 */
+	public long getValue() {
+		return dsValue;
 	}
 
 	/**
@@ -39,26 +44,51 @@ public class TiDS18B20ROM {
 	 * @return family code
 	 */
 	public int getFamilyCode() {
-		return dsRom[0] & 0xff;
+		return (int) (dsValue & 0xff);
 	}
 
 	/**
-	 * Gets the serial number, 48bits
+	 * Gets the serial number, 48bits, a new array on each call
 	 * 
 	 * @return serial number
 	 */
 	public byte[] getSerialNumber() {
 		byte[] serial = new byte[6];
-		System.arraycopy(dsRom, 1, serial, 0, 6);
+		for (int i = 0; i < 6; i++) {
+			serial[i] = (byte) (dsValue >>> ((i + 1) * 8));
+		}
 		return serial;
 	}
 
+	/**
+	 * Gets the serial number integer, 48bits
+	 * 
+	 * @return serial number
+	 */
+	public long getSerialNumberValue() {
+		return (dsValue >>> 8) & 0xffffffffffffL;
+	}
+
 	/**
 	 * Gets the checksum code, 8bits
 	 * 
 	 * @return checksum code
 	 */
 	public int getChecksumCode() {
-		return dsRom[7] & 0xff;
+		return (int) (dsValue >>> 56);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof TiDS18B20ROM))
+			return false;
+		return dsValue == ((TiDS18B20ROM) obj).dsValue;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (dsValue ^ (dsValue >>> 32));
 	}
 }
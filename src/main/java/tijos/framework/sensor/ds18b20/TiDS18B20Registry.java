@@ -0,0 +1,194 @@
+package tijos.framework.sensor.ds18b20;
+
+/**
+ * 
+ * ROM integer to sensor index registry, open addressing with linear probing on
+ * primitive arrays, the lookup does not allocate any object
+ */
+public class TiDS18B20Registry {
+	/**
+	 * Registry key list, ROM integer
+	 */
+	private long[] regKeys;
+	/**
+	 * Registry value list, sensor index, -1:empty slot
+	 */
+	private int[] regValues;
+	/**
+	 * Registry entry number
+	 */
+	private int regSize;
+
+	/**
+	 * TiDS18B20Registry initialization
+	 * 
+	 * @param capacity
+	 *            expected sensor number[IN]
+	 */
+	public TiDS18B20Registry(int capacity) {
+		int slots = 8;
+		while (slots < capacity * 2)
+			slots <<= 1;
+		regKeys = new long[slots];
+		regValues = new int[slots];
+		for (int i = 0; i < slots; i++)
+			regValues[i] = -1;
+		regSize = 0;
+	}
+
+	/**
+	 * Gets the home slot of the ROM integer
+	 * 
+	 * @param rom
+	 *            ROM integer[IN]
+	 * @return slot index
+	 */
+	private int slotOf(long rom) {
+		int h = (int) (rom ^ (rom >>> 32)) * 0x9e3779b9;
+		return (h ^ (h >>> 16)) & (regKeys.length - 1);
+	}
+
+	/**
+	 * Find the slot of the ROM integer
+	 * 
+	 * @param rom
+	 *            ROM integer[IN]
+	 * @return slot index, -1:not found
+	 */
+	private int slotFind(long rom) {
+		int mask = regKeys.length - 1;
+		int slot = slotOf(rom);
+		while (regValues[slot] >= 0) {
+			if (regKeys[slot] == rom)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Double the slot number and rehash all entries
+	 */
+	private void grow() {
+		long[] keys = regKeys;
+		int[] values = regValues;
+		regKeys = new long[keys.length * 2];
+		regValues = new int[keys.length * 2];
+		for (int i = 0; i < regValues.length; i++)
+			regValues[i] = -1;
+		regSize = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (values[i] >= 0)
+				put(keys[i], values[i]);
+		}
+	}
+
+	/**
+	 * Register the sensor index of the ROM integer, the old index is replaced
+	 * 
+	 * @param rom
+	 *            ROM integer[IN]
+	 * @param index
+	 *            sensor index, >=0[IN]
+	 */
+	public void put(long rom, int index) {
+		if (index < 0)
+			throw new IllegalArgumentException("negative index.");
+		if ((regSize + 1) * 2 > regKeys.length)
+			grow();
+		int mask = regKeys.length - 1;
+		int slot = slotOf(rom);
+		while (regValues[slot] >= 0) {
+			if (regKeys[slot] == rom) {
+				regValues[slot] = index;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		regKeys[slot] = rom;
+		regValues[slot] = index;
+		regSize++;
+	}
+
+	/**
+	 * Register the sensor index of the ROM object
+	 * 
+	 * @param rom
+	 *            device ROM object[IN]
+	 * @param index
+	 *            sensor index, >=0[IN]
+	 */
+	public void put(TiDS18B20ROM rom, int index) {
+		put(rom.getValue(), index);
+	}
+
+	/**
+	 * Gets the sensor index of the ROM integer
+	 * 
+	 * @param rom
+	 *            ROM integer[IN]
+	 * @return sensor index, -1:not registered
+	 */
+	public int get(long rom) {
+		int slot = slotFind(rom);
+		return (slot < 0) ? -1 : regValues[slot];
+	}
+
+	/**
+	 * Gets the sensor index of the ROM object
+	 * 
+	 * @param rom
+	 *            device ROM object[IN]
+	 * @return sensor index, -1:not registered
+	 */
+	public int get(TiDS18B20ROM rom) {
+		return get(rom.getValue());
+	}
+
+	/**
+	 * Remove the ROM integer
+	 * 
+	 * @param rom
+	 *            ROM integer[IN]
+	 * @return sensor index removed, -1:not registered
+	 */
+	public int remove(long rom) {
+		int slot = slotFind(rom);
+		if (slot < 0)
+			return -1;
+		int index = regValues[slot];
+		int mask = regKeys.length - 1;
+		int hole = slot;
+		int next = (slot + 1) & mask;
+		while (regValues[next] >= 0) {
+			int home = slotOf(regKeys[next]);
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				regKeys[hole] = regKeys[next];
+				regValues[hole] = regValues[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		regValues[hole] = -1;
+		regSize--;
+		return index;
+	}
+
+	/**
+	 * Remove all entries
+	 */
+	public void clear() {
+		for (int i = 0; i < regValues.length; i++)
+			regValues[i] = -1;
+		regSize = 0;
+	}
+
+	/**
+	 * Gets the entry number
+	 * 
+	 * @return entry number
+	 */
+	public int size() {
+		return regSize;
+	}
+}
@@ -0,0 +1,241 @@
+package tijos.framework.sensor.ds18b20;
+
+import java.io.IOException;
+
+import tijos.framework.util.crc.CRC8;
+
+/**
+ * 
+ * Device topology of a 1-Wire bus, the ROM list could be saved to a compact
+ * byte array(8 bytes per device) and restored at startup by checking the
+ * presence of each device instead of a full search, the later rescan checks
+ * the known devices by Match ROM and searches the bus only when a new device
+ * is suspected, the added and removed devices are reported
+ */
+public class TiDS18B20Topology {
+	/**
+	 * TiDS18B20 object
+	 */
+	private TiDS18B20 dsObj;
+	/**
+	 * Known device ROM list
+	 */
+	private TiDS18B20ROM[] topoROMs;
+	/**
+	 * Added device ROM list of the last rescan
+	 */
+	private TiDS18B20ROM[] topoAdded;
+	/**
+	 * Removed device ROM list of the last restore or rescan
+	 */
+	private TiDS18B20ROM[] topoRemoved;
+
+	/**
+	 * TiDS18B20Topology initialization
+	 * 
+	 * @param ds
+	 *            TiDS18B20 object of the bus[IN]
+	 */
+	public TiDS18B20Topology(TiDS18B20 ds) {
+		dsObj = ds;
+		topoROMs = new TiDS18B20ROM[0];
+		topoAdded = topoROMs;
+		topoRemoved = topoROMs;
+	}
+
+	/**
+	 * Shrink the ROM object list
+	 * 
+	 * @param list
+	 *            device ROM object list[IN]
+	 * @param count
+	 *            valid number[IN]
+	 * @return device ROM object list
+	 */
+	private static TiDS18B20ROM[] romTrim(TiDS18B20ROM[] list, int count) {
+		if (count == list.length)
+			return list;
+		TiDS18B20ROM[] trim = new TiDS18B20ROM[count];
+		System.arraycopy(list, 0, trim, 0, count);
+		return trim;
+	}
+
+	/**
+	 * Save the known device ROM list
+	 * 
+	 * @return ROM data, 8 bytes per device
+	 */
+	public byte[] save() {
+		synchronized (this) {
+			byte[] data = new byte[topoROMs.length * 8];
+			for (int i = 0; i < topoROMs.length; i++) {
+				long value = topoROMs[i].getValue();
+				for (int j = 0; j < 8; j++) {
+					data[i * 8 + j] = (byte) (value >>> (j * 8));
+				}
+			}
+			return data;
+		}
+	}
+
+	/**
+	 * Restore the device ROM list saved before,<br>
+	 * the ROM with CRC error or saved twice is dropped, each device is checked
+	 * by Match ROM and the absent ones are reported by getRemoved
+	 * 
+	 * @param data
+	 *            ROM data, 8 bytes per device[IN]
+	 * @return present device number
+	 * @throws IOException
+	 */
+	public int restore(byte[] data) throws IOException {
+		int total = data.length / 8;
+		TiDS18B20ROM[] present = new TiDS18B20ROM[total];
+		TiDS18B20ROM[] removed = new TiDS18B20ROM[total];
+		int presentCount = 0, removedCount = 0;
+		TiDS18B20Registry restored = new TiDS18B20Registry(total);
+		byte[] code = new byte[8];
+		for (int i = 0; i < total; i++) {
+			System.arraycopy(data, i * 8, code, 0, 8);
+			if (CRC8.compute(code) != 0)
+				continue;
+			long value = 0;
+			for (int j = 7; j >= 0; j--) {
+				value = (value << 8) | (code[j] & 0xff);
+			}
+			if (restored.get(value) >= 0)
+				continue;
+			restored.put(value, i);
+			TiDS18B20ROM rom = new TiDS18B20ROM(value);
+			if (dsObj.isPresent(rom))
+				present[presentCount++] = rom;
+			else
+				removed[removedCount++] = rom;
+		}
+		synchronized (this) {
+			topoROMs = romTrim(present, presentCount);
+			topoAdded = new TiDS18B20ROM[0];
+			topoRemoved = romTrim(removed, removedCount);
+		}
+		return presentCount;
+	}
+
+	/**
+	 * Check the known devices by Match ROM and update the known device ROM
+	 * list, the bus is searched only if no device is known
+	 * 
+	 * @return true:device added or removed, false:no change
+	 * @throws IOException
+	 */
+	public boolean rescan() throws IOException {
+		return rescan(false);
+	}
+
+	/**
+	 * Check the known devices by Match ROM and update the known device ROM
+	 * list,<br>
+	 * the full bus search is run only when a new device is suspected(e.g.
+	 * after a hot plug signal) or no device is known, otherwise the cost is
+	 * one scratchpad read per known device
+	 * 
+	 * @param suspected
+	 *            true:a new device is suspected, search the bus[IN]
+	 * @return true:device added or removed, false:no change
+	 * @throws IOException
+	 */
+	public boolean rescan(boolean suspected) throws IOException {
+		TiDS18B20ROM[] roms;
+		synchronized (this) {
+			roms = topoROMs;
+		}
+		if (suspected || roms.length == 0)
+			return searchUpdate();
+		TiDS18B20ROM[] present = new TiDS18B20ROM[roms.length];
+		TiDS18B20ROM[] removed = new TiDS18B20ROM[roms.length];
+		int presentCount = 0, removedCount = 0;
+		for (int i = 0; i < roms.length; i++) {
+			if (dsObj.isPresent(roms[i]))
+				present[presentCount++] = roms[i];
+			else
+				removed[removedCount++] = roms[i];
+		}
+		synchronized (this) {
+			topoROMs = romTrim(present, presentCount);
+			topoAdded = new TiDS18B20ROM[0];
+			topoRemoved = romTrim(removed, removedCount);
+			return removedCount > 0;
+		}
+	}
+
+	/**
+	 * Search the bus and update the known device ROM list by the difference
+	 * 
+	 * @return true:device added or removed, false:no change
+	 * @throws IOException
+	 */
+	private boolean searchUpdate() throws IOException {
+		long[] found = dsObj.search(false);
+		synchronized (this) {
+			TiDS18B20Registry registry = new TiDS18B20Registry(topoROMs.length);
+			for (int i = 0; i < topoROMs.length; i++) {
+				registry.put(topoROMs[i], i);
+			}
+			TiDS18B20ROM[] known = new TiDS18B20ROM[found.length];
+			TiDS18B20ROM[] added = new TiDS18B20ROM[found.length];
+			TiDS18B20ROM[] removed = new TiDS18B20ROM[topoROMs.length];
+			boolean[] seen = new boolean[topoROMs.length];
+			int addedCount = 0, removedCount = 0;
+			for (int i = 0; i < found.length; i++) {
+				int index = registry.get(found[i]);
+				if (index >= 0) {
+					seen[index] = true;
+					known[i] = topoROMs[index];
+				} else {
+					known[i] = new TiDS18B20ROM(found[i]);
+					added[addedCount++] = known[i];
+				}
+			}
+			for (int i = 0; i < topoROMs.length; i++) {
+				if (!seen[i])
+					removed[removedCount++] = topoROMs[i];
+			}
+			topoROMs = known;
+			topoAdded = romTrim(added, addedCount);
+			topoRemoved = romTrim(removed, removedCount);
+			return addedCount > 0 || removedCount > 0;
+		}
+	}
+
+	/**
+	 * Gets the known device ROM list
+	 * 
+	 * @return device ROM object list
+	 */
+	public TiDS18B20ROM[] getROMs() {
+		synchronized (this) {
+			return topoROMs;
+		}
+	}
+
+	/**
+	 * Gets the device ROM list added by the last rescan
+	 * 
+	 * @return device ROM object list
+	 */
+	public TiDS18B20ROM[] getAdded() {
+		synchronized (this) {
+			return topoAdded;
+		}
+	}
+
+	/**
+	 * Gets the device ROM list removed by the last restore or rescan
+	 * 
+	 * @return device ROM object list
+	 */
+	public TiDS18B20ROM[] getRemoved() {
+		synchronized (this) {
+			return topoRemoved;
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package tijos.framework.sensor.general;
+
+/*
+ * Analog threshold listener for TiGeneralSensor
+ * 
+ */
+public interface ITiGeneralSensorAnalogEventListener {
+	/**
+	 * notification of the software threshold on AOUT
+	 * 
+	 * @param sensor the sensor object
+	 * @param threshold the threshold id
+	 * @param active true:beyond the threshold, false:cleared
+	 * @param value the AOUT raw value
+	 */
+	void onAnalogThreshold(TiGeneralSensor sensor, int threshold, boolean active, int value);
+}
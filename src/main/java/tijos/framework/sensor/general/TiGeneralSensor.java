@@ -4,11 +4,7 @@ import java.io.IOException;
 
 import tijos.framework.devicecenter.TiADC;
 import tijos.framework.devicecenter.TiGPIO;
-import tijos.framework.eventcenter.ITiEvent;
-import tijos.framework.eventcenter.ITiEventListener;
-import tijos.framework.eventcenter.TiEventService;
-import tijos.framework.eventcenter.TiEventType;
-import tijos.framework.eventcenter.TiGPIOEvent;
+import tijos.framework.sensor.common.TiSignalSensor;
 
 /**
  * 
@@ -16,47 +12,30 @@ import tijos.framework.eventcenter.TiGPIOEvent;
  * composed with a GPIO pin and a ADC. DOUT could be got from a TiGPIO pin, AOUT
  * could be got from a TiADC pin
  */
-public class TiGeneralSensor implements ITiEventListener {
+public class TiGeneralSensor extends TiSignalSensor {
 	/**
-	 * TiGeneralSensor signal pin id
+	 * Analog threshold listener
 	 */
-	private int signalPin;
-	/**
-	 * TiGeneralSensor analog channel id
-	 */
-	private int analogChannel;
-	/**
-	 * TiGeneralSensor event time
-	 */
-	private long eventTime;
-	/**
-	 * TiGPIO object
-	 */
-	private TiGPIO gpioObj = null;
-	/**
-	 * TiADC object
-	 */
-	private TiADC adcObj = null;
+	private ITiGeneralSensorAnalogEventListener analogLc = null;
 	/**
 	 * TiGeneralSensor event listener
 	 */
 	private ITiGeneralSensorEventListener gernalSensorLc = null;
 
 	@Override
-	public TiEventType getType() {
-		return TiEventType.GPIO;
+	protected void signalNotify() {
+		if (gernalSensorLc != null)
+			gernalSensorLc.onThresholdNotify(this);
 	}
 
 	@Override
-	public void onEvent(ITiEvent evt) {
+	protected void analogNotify(int threshold, boolean active, int value) {
+		ITiGeneralSensorAnalogEventListener lc;
 		synchronized (this) {
-			TiGPIOEvent event = (TiGPIOEvent) evt;
-			if (event.getPin() == signalPin) {
-				eventTime = event.getTime();
-				if (gernalSensorLc != null)
-					gernalSensorLc.onThresholdNotify(this);
-			}
+			lc = analogLc;
 		}
+		if (lc != null)
+			lc.onAnalogThreshold(this, threshold, active, value);
 	}
 
 	/**
@@ -69,12 +48,10 @@ public class TiGeneralSensor implements ITiEventListener {
 	public void setEventListener(ITiGeneralSensorEventListener lc) throws IOException {
 		synchronized (this) {
 			if (gernalSensorLc == null && lc != null) {
-				gpioObj.setEventParameters(signalPin, TiGPIO.EVT_BOTHEDGE, 1000);// >=1ms
-				TiEventService.getInstance().addListener(this);
+				eventEnable(true);
 				gernalSensorLc = lc;
 			} else if (gernalSensorLc != null && lc == null) {
-				gpioObj.setEventParameters(signalPin, TiGPIO.EVT_NONE, 0);
-				TiEventService.getInstance().unregisterEvent(this);
+				eventEnable(false);
 				gernalSensorLc = null;
 			} else {
 			}
@@ -89,15 +66,10 @@ public class TiGeneralSensor implements ITiEventListener {
 	 *            TiGPIO object[IN]
 	 * @param signalPinID
 	 *            signal pin id[IN]
-	 * @param analogChannelID
-	 *            analog channel id[IN]   
 	 * @throws IOException
 	 */
 	public TiGeneralSensor(TiGPIO gpio, int signalPinID) throws IOException {
-		gpio.setWorkMode(signalPinID, TiGPIO.INPUT_FLOATING);
-		gpioObj = gpio;
-		signalPin = signalPinID;
-		eventTime = -1;
+		this(gpio, signalPinID, null, 0);
 	}
 
 	/**
@@ -114,49 +86,18 @@ public class TiGeneralSensor implements ITiEventListener {
 	 * @throws IOException
 	 */
 	public TiGeneralSensor(TiGPIO gpio, int signalPinID, TiADC adc, int analogChannelID) throws IOException {
-		this(gpio, signalPinID);
-		adcObj = adc;
-		analogChannel = analogChannelID;
-	}
-
-	/**
-	 * Gets the event time
-	 * 
-	 * @return event time, unit:us
-	 */
-	public long getEventTime() {
-		return eventTime;
+		super(gpio, signalPinID, adc, analogChannelID, 1000);// >=1ms
 	}
 
 	/**
-	 * Gets the analog output value of AOUT
+	 * Set the analog threshold listener
 	 * 
-	 * @return voltage value
-	 * @throws IOException
-	 */
-	public int getAnalogOutput() throws IOException {
-		if (adcObj == null)
-			return 0;
-		
-		return adcObj.getRawValue(analogChannel);
-	}
-
-	/**
-	 * Gets the value of DOUT
-	 * 
-	 * @return level
-	 * @throws IOException
-	 */
-	public int getDigitalOutput() throws IOException {
-		return gpioObj.readPin(signalPin);
-	}
-
-	/**
-	 * Gets the signal pin id
-	 * 
-	 * @return pin id
+	 * @param lc
+	 *            listener object or null[IN]
 	 */
-	public int getSignalPinID() {
-		return signalPin;
+	public void setAnalogEventListener(ITiGeneralSensorAnalogEventListener lc) {
+		synchronized (this) {
+			analogLc = lc;
+		}
 	}
 }
@@ -5,9 +5,9 @@ import java.io.IOException;
 import tijos.framework.devicecenter.TiGPIO;
 import tijos.framework.eventcenter.ITiEvent;
 import tijos.framework.eventcenter.ITiEventListener;
-import tijos.framework.eventcenter.TiEventService;
 import tijos.framework.eventcenter.TiEventType;
 import tijos.framework.eventcenter.TiGPIOEvent;
+import tijos.framework.sensor.common.TiGPIOEventDispatcher;
 import tijos.framework.util.Delay;
 
 public class TiHCSR04 implements ITiEventListener {
@@ -43,6 +43,51 @@ public class TiHCSR04 implements ITiEventListener {
 	 * TiHCSR04 enable flag
 	 */
 	private volatile boolean sr04Enable;
+	/**
+	 * TiHCSR04 max range, unit:m
+	 */
+	private double maxRange;
+	/**
+	 * TiHCSR04 echo wait margin over the round trip of the max range, for the
+	 * event dispatch latency, unit:ms
+	 */
+	private int echoMargin;
+	/**
+	 * TiHCSR04 continuous mode flag
+	 */
+	private volatile boolean continuous;
+	/**
+	 * TiHCSR04 continuous mode stopped by an IO error
+	 */
+	private volatile boolean contError;
+	/**
+	 * TiHCSR04 owner of the sensor, e.g. a scheduler, null:free
+	 */
+	private Object sr04Owner;
+	/**
+	 * TiHCSR04 continuous trigger interval, unit:ms
+	 */
+	private int contInterval;
+	/**
+	 * TiHCSR04 continuous ranging thread
+	 */
+	private Thread contThread;
+	/**
+	 * TiHCSR04 sample ring buffer, echo delta, unit:us, -1:no echo
+	 */
+	private long[] ringDelta;
+	/**
+	 * TiHCSR04 sample sort buffer for median
+	 */
+	private long[] ringSort;
+	/**
+	 * TiHCSR04 sample ring buffer write index
+	 */
+	private int ringHead;
+	/**
+	 * TiHCSR04 sample number in ring buffer
+	 */
+	private int ringCount;
 
 	@Override
 	public TiEventType getType() {
@@ -58,7 +103,10 @@ public class TiHCSR04 implements ITiEventListener {
 			switch (eventObj.getEvent()) {
 			case TiGPIO.EVT_FALLINGEDGE:
 				echoTime2 = eventObj.getTime();
-				sr04Enable = false;
+				synchronized (this) {
+					sr04Enable = false;
+					notifyAll();
+				}
 				break;
 			case TiGPIO.EVT_RISINGEDGE:
 				echoTime1 = eventObj.getTime();
@@ -79,19 +127,196 @@ public class TiHCSR04 implements ITiEventListener {
 	 * @param echoPinID
 	 *            echo id[IN]
 	 * @throws IOException
+	 * @throws IllegalStateException
+	 *             the echo pin is used by another driver, close() it first
 	 */
 	public TiHCSR04(TiGPIO gpio, int trigPinID, int echoPinID) throws IOException {
 		gpio.setWorkMode(trigPinID, TiGPIO.OUTPUT_PP);
 		gpio.writePin(trigPinID, 0);
 		gpio.setWorkMode(echoPinID, TiGPIO.INPUT_FLOATING);
 		gpio.setEventParameters(echoPinID, TiGPIO.EVT_BOTHEDGE, 0);
-		TiEventService.getInstance().addListener(this);
+		TiGPIOEventDispatcher.getInstance().attach(echoPinID, this);
 		gpioObj = gpio;
 		trigPin = trigPinID;
 		echoPin = echoPinID;
 		echoDelta = -1;
 		speedDefault = 0.00034;
 		sr04Enable = false;
+		maxRange = 4.0;
+		echoMargin = 10;
+		continuous = false;
+	}
+
+	/**
+	 * Release the echo pin, the continuous ranging mode is stopped, the pin
+	 * event is disabled and the driver is detached, a new TiHCSR04 can be
+	 * created on the pin afterwards
+	 * 
+	 * @throws IOException
+	 *             the sensor is owned by a running scheduler
+	 */
+	public void close() throws IOException {
+		stopContinuous();
+		synchronized (this) {
+			if (sr04Owner != null)
+				throw new IOException("busy.");
+			gpioObj.setEventParameters(echoPin, TiGPIO.EVT_NONE, 0);
+			TiGPIOEventDispatcher.getInstance().detach(echoPin, this);
+		}
+	}
+
+	/**
+	 * Send the trig pulse and wait for the echo
+	 * 
+	 * @param timeout
+	 *            max wait time, unit:ms[IN]
+	 * @return echo delta, unit:us, -1:no echo
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private long echoWait(long timeout) throws IOException, InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		triggerBegin();
+		Delay.msDelay(1);
+		triggerEnd();
+		return echoCollect(deadline);
+	}
+
+	/**
+	 * Raise the trig pin and enable the echo capture
+	 * 
+	 * @throws IOException
+	 */
+	void triggerBegin() throws IOException {
+		synchronized (this) {
+			echoTime1 = 0;
+			echoTime2 = 0;
+			sr04Enable = true;
+			try {
+				gpioObj.writePin(trigPin, 1);
+			} catch (IOException e) {
+				sr04Enable = false;
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Release the trig pin
+	 * 
+	 * @throws IOException
+	 */
+	void triggerEnd() throws IOException {
+		gpioObj.writePin(trigPin, 0);
+	}
+
+	/**
+	 * Wait for the echo of the trigger
+	 * 
+	 * @param deadline
+	 *            max wait time, unit:ms[IN]
+	 * @return echo delta, unit:us, -1:no echo
+	 * @throws InterruptedException
+	 */
+	long echoCollect(long deadline) throws InterruptedException {
+		synchronized (this) {
+			try {
+				while (sr04Enable) {
+					long timeLeft = deadline - System.currentTimeMillis();
+					if (timeLeft <= 0)
+						return -1;
+					wait(timeLeft);
+				}
+			} finally {
+				sr04Enable = false;
+			}
+			if (echoTime1 <= 0 || echoTime2 <= echoTime1)
+				return -1;
+			return echoTime2 - echoTime1;
+		}
+	}
+
+	/**
+	 * Gets the echo timeout derived from the max range and the margin,
+	 * unit:ms
+	 * 
+	 * @return timeout
+	 */
+	long echoTimeout() {
+		return (long) (2 * maxRange / speedDefault / 1000) + echoMargin;
+	}
+
+	/**
+	 * Take the sensor for the owner, the measurement and the continuous
+	 * ranging mode are rejected until it is released
+	 * 
+	 * @param owner
+	 *            owner object[IN]
+	 * @return true:taken, false:busy
+	 */
+	boolean acquire(Object owner) {
+		synchronized (this) {
+			if (continuous || contThread != null || sr04Owner != null)
+				return false;
+			sr04Owner = owner;
+			return true;
+		}
+	}
+
+	/**
+	 * Release the sensor taken by the owner
+	 * 
+	 * @param owner
+	 *            owner object[IN]
+	 */
+	void release(Object owner) {
+		synchronized (this) {
+			if (sr04Owner == owner)
+				sr04Owner = null;
+		}
+	}
+
+	/**
+	 * Trigger the measurement periodically and save the samples to ring
+	 * buffer
+	 */
+	private void rangingLoop() {
+		long nextTime = System.currentTimeMillis();
+		try {
+			synchronized (this) {
+				while (continuous) {
+					long timeLeft = nextTime - System.currentTimeMillis();
+					if (timeLeft > 0) {
+						wait(timeLeft);
+						continue;
+					}
+					nextTime += contInterval;
+					long delta;
+					try {
+						delta = echoWait(echoTimeout());
+					} catch (IOException e) {
+						// record a no echo sample and stop with the error flag
+						contError = true;
+						continuous = false;
+						delta = -1;
+					}
+					if (delta >= 0 && (delta * speedDefault) / 2 > maxRange)
+						delta = -1;
+					ringDelta[ringHead] = delta;
+					ringHead = (ringHead + 1) % ringDelta.length;
+					if (ringCount < ringDelta.length)
+						ringCount++;
+					if (nextTime < System.currentTimeMillis())
+						nextTime = System.currentTimeMillis();
+				}
+			}
+		} catch (InterruptedException e) {
+			continuous = false;
+		}
+		synchronized (this) {
+			contThread = null;
+			notifyAll();
+		}
 	}
 
 	/**
@@ -100,26 +325,190 @@ public class TiHCSR04 implements ITiEventListener {
 	 * @throws IOException
 	 */
 	public void measure() throws IOException {
-		int currTime = (int) System.currentTimeMillis();
 		synchronized (this) {
-			sr04Enable = true;
-			gpioObj.writePin(trigPin, 1);
-			Delay.msDelay(1);
-			gpioObj.writePin(trigPin, 0);
-			for (;;) {
-				if ((int) System.currentTimeMillis() - currTime > 500) {
+			if (continuous || sr04Owner != null)
+				throw new IOException("busy.");
+			long delta;
+			try {
+				delta = echoWait(500);
+			} catch (InterruptedException e) {
+				throw new IOException("interrupted.");
+			}
+			if (delta < 0) {
+				if (echoTime2 == 0)
 					throw new IOException("time out.");
+				throw new IOException("data error.");
+			}
+			echoDelta = delta;
+		}
+	}
+
+	/**
+	 * Start the continuous ranging mode,<br>
+	 * the measurement is triggered periodically by a background thread, the
+	 * echo wait time is derived from the max range, the samples are saved to a
+	 * ring buffer
+	 * 
+	 * @param interval
+	 *            trigger interval, >=60 recommended, unit:ms[IN]
+	 * @param bufferSize
+	 *            sample number of ring buffer[IN]
+	 * @throws IOException
+	 */
+	public void startContinuous(int interval, int bufferSize) throws IOException {
+		if (interval <= 0 || bufferSize <= 0)
+			throw new IllegalArgumentException("invalid parameter.");
+		synchronized (this) {
+			if (continuous || contThread != null || sr04Owner != null)
+				throw new IOException("busy.");
+			contInterval = interval;
+			ringDelta = new long[bufferSize];
+			ringSort = new long[bufferSize];
+			ringHead = 0;
+			ringCount = 0;
+			contError = false;
+			continuous = true;
+			contThread = new Thread(new Runnable() {
+				public void run() {
+					rangingLoop();
 				}
-				if (sr04Enable) {
-					Thread.yield();
-					continue;
+			});
+			contThread.start();
+		}
+	}
+
+	/**
+	 * Stop the continuous ranging mode, wait for the ranging thread to exit
+	 */
+	public void stopContinuous() {
+		synchronized (this) {
+			continuous = false;
+			notifyAll();
+			while (contThread != null) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					break;
 				}
-				if (echoTime2 <= echoTime1) {
-					throw new IOException("data error.");
+			}
+		}
+	}
+
+	/**
+	 * Check if the continuous ranging mode is running
+	 * 
+	 * @return true or false
+	 */
+	public boolean isContinuous() {
+		return continuous;
+	}
+
+	/**
+	 * Check if the continuous ranging mode was stopped by an IO error, the
+	 * failed measurement is saved as a no echo sample
+	 * 
+	 * @return true or false
+	 */
+	public boolean isContinuousError() {
+		return contError;
+	}
+
+	/**
+	 * Gets the latest distance of the continuous ranging mode, unit:m
+	 * 
+	 * @return distance, NaN:no echo
+	 */
+	public double getLatestDistance() {
+		synchronized (this) {
+			if (ringCount <= 0)
+				return Double.NaN;
+			long delta = ringDelta[(ringHead + ringDelta.length - 1) % ringDelta.length];
+			if (delta < 0)
+				return Double.NaN;
+			return (delta * speedDefault) / 2;
+		}
+	}
+
+	/**
+	 * Gets the median distance of the latest samples of the continuous
+	 * ranging mode, the samples without echo are skipped, unit:m
+	 * 
+	 * @param count
+	 *            latest sample number[IN]
+	 * @return distance, NaN:no echo
+	 */
+	public double getMedianDistance(int count) {
+		synchronized (this) {
+			if (count > ringCount)
+				count = ringCount;
+			int valid = 0;
+			int index = ringHead;
+			for (int i = 0; i < count; i++) {
+				index = (index + ringDelta.length - 1) % ringDelta.length;
+				long delta = ringDelta[index];
+				if (delta < 0)
+					continue;
+				int j = valid++;
+				while (j > 0 && ringSort[j - 1] > delta) {
+					ringSort[j] = ringSort[j - 1];
+					j--;
 				}
-				echoDelta = echoTime2 - echoTime1;
-				break;
+				ringSort[j] = delta;
 			}
+			if (valid <= 0)
+				return Double.NaN;
+			long median = ringSort[valid / 2];
+			if ((valid & 1) == 0)
+				median = (median + ringSort[valid / 2 - 1]) / 2;
+			return (median * speedDefault) / 2;
+		}
+	}
+
+	/**
+	 * Convert the echo delta to distance, unit:m
+	 * 
+	 * @param delta
+	 *            echo delta, unit:us[IN]
+	 * @return distance, NaN:no echo or out of range
+	 */
+	double toDistance(long delta) {
+		synchronized (this) {
+			if (delta < 0)
+				return Double.NaN;
+			double distance = (delta * speedDefault) / 2;
+			if (distance > maxRange)
+				return Double.NaN;
+			return distance;
+		}
+	}
+
+	/**
+	 * Set the max range, the echo wait time of the continuous ranging mode is
+	 * derived from it
+	 * 
+	 * @param range
+	 *            max range, default:4.0, unit:m[IN]
+	 */
+	public void setMaxRange(double range) {
+		if (range <= 0)
+			throw new IllegalArgumentException("invalid range.");
+		synchronized (this) {
+			maxRange = range;
+		}
+	}
+
+	/**
+	 * Set the echo wait margin over the round trip time of the max range, the
+	 * echo events are delivered by the shared event thread and may be late
+	 * 
+	 * @param margin
+	 *            margin, default:10, unit:ms[IN]
+	 */
+	public void setEchoMargin(int margin) {
+		if (margin < 0)
+			throw new IllegalArgumentException("invalid margin.");
+		synchronized (this) {
+			echoMargin = margin;
 		}
 	}
 
@@ -133,7 +522,7 @@ public class TiHCSR04 implements ITiEventListener {
 			if (echoDelta < 0)
 				return Double.NaN;
 			double distance = (echoDelta * speedDefault) / 2;
-			if (distance > 4.0)
+			if (distance > maxRange)
 				return Double.NaN;
 			return distance;
 		}
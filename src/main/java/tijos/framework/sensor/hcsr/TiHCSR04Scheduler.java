@@ -0,0 +1,347 @@
+package tijos.framework.sensor.hcsr;
+
+import java.io.IOException;
+
+import tijos.framework.util.Delay;
+
+/**
+ * 
+ * Ranging scheduler of a TiHCSR04 group, the sensors of the same slot are
+ * triggered together(e.g. the opposite-facing ones), the slots are triggered
+ * one after another to avoid the echo crosstalk, the next slot starts as soon
+ * as all echoes of the current slot are received,<br>
+ * the grouping is manual by setSlot, the default puts each sensor in its own
+ * slot, which is crosstalk free but serial
+ */
+public class TiHCSR04Scheduler {
+	/**
+	 * TiHCSR04 object list
+	 */
+	private TiHCSR04[] sensorList;
+	/**
+	 * Slot id of each sensor
+	 */
+	private int[] sensorSlot;
+	/**
+	 * Sensor index list ordered by slot
+	 */
+	private int[] slotOrder;
+	/**
+	 * Start position of each slot in slotOrder, the last one is the end
+	 */
+	private int[] slotStart;
+	/**
+	 * Guard time between slots, unit:ms
+	 */
+	private int guardTime;
+	/**
+	 * Min period of a scheduling cycle, unit:ms
+	 */
+	private int cyclePeriod;
+	/**
+	 * Distance snapshot of each sensor, unit:m
+	 */
+	private double[] snapDistance;
+	/**
+	 * Scheduling cycle count
+	 */
+	private long cycleCount;
+	/**
+	 * Running flag
+	 */
+	private volatile boolean running;
+	/**
+	 * Scheduling thread
+	 */
+	private Thread schedThread;
+	/**
+	 * IO error which stopped the scheduling thread, null:none
+	 */
+	private IOException schedError;
+
+	/**
+	 * TiHCSR04Scheduler initialization, default:each sensor has its own slot
+	 * 
+	 * @param sensors
+	 *            TiHCSR04 object list[IN]
+	 */
+	public TiHCSR04Scheduler(TiHCSR04[] sensors) {
+		sensorList = new TiHCSR04[sensors.length];
+		System.arraycopy(sensors, 0, sensorList, 0, sensors.length);
+		sensorSlot = new int[sensors.length];
+		snapDistance = new double[sensors.length];
+		for (int i = 0; i < sensors.length; i++) {
+			sensorSlot[i] = i;
+			snapDistance[i] = Double.NaN;
+		}
+		guardTime = 10;
+		cyclePeriod = 0;
+		running = false;
+	}
+
+	/**
+	 * Set the slot of the sensor, the sensors of the same slot are triggered
+	 * together, the slots run in ascending id order, the ids need not be
+	 * contiguous
+	 * 
+	 * @param index
+	 *            sensor index[IN]
+	 * @param slot
+	 *            slot id, >=0[IN]
+	 * @throws IOException
+	 */
+	public void setSlot(int index, int slot) throws IOException {
+		if (index < 0 || index >= sensorList.length)
+			throw new IllegalArgumentException("invalid index.");
+		if (slot < 0)
+			throw new IllegalArgumentException("negative slot.");
+		synchronized (this) {
+			if (running)
+				throw new IOException("busy.");
+			sensorSlot[index] = slot;
+		}
+	}
+
+	/**
+	 * Set the guard time between slots for the echo decay
+	 * 
+	 * @param time
+	 *            guard time, default:10, unit:ms[IN]
+	 */
+	public void setGuardTime(int time) {
+		synchronized (this) {
+			guardTime = (time < 0) ? 0 : time;
+		}
+	}
+
+	/**
+	 * Set the min period of a scheduling cycle
+	 * 
+	 * @param period
+	 *            period, default:0(no wait), unit:ms[IN]
+	 */
+	public void setCyclePeriod(int period) {
+		synchronized (this) {
+			cyclePeriod = (period < 0) ? 0 : period;
+		}
+	}
+
+	/**
+	 * Build the slot order list, the slot ids are compacted to 0..n-1 in
+	 * ascending order so a sparse id does not enlarge the lists
+	 */
+	private void slotBuild() {
+		int n = sensorSlot.length;
+		int[] ids = new int[n];
+		int idCount = 0;
+		for (int i = 0; i < n; i++) {
+			int id = sensorSlot[i];
+			int k = idCount;
+			while (k > 0 && ids[k - 1] > id)
+				k--;
+			if (k > 0 && ids[k - 1] == id)
+				continue;
+			System.arraycopy(ids, k, ids, k + 1, idCount - k);
+			ids[k] = id;
+			idCount++;
+		}
+		int[] slot = new int[n];
+		int[] start = new int[idCount + 1];
+		for (int i = 0; i < n; i++) {
+			int k = 0;
+			while (ids[k] != sensorSlot[i])
+				k++;
+			slot[i] = k;
+			start[k + 1]++;
+		}
+		for (int i = 1; i < start.length; i++) {
+			start[i] += start[i - 1];
+		}
+		int[] fill = new int[idCount];
+		System.arraycopy(start, 0, fill, 0, fill.length);
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[fill[slot[i]]++] = i;
+		}
+		slotOrder = order;
+		slotStart = start;
+	}
+
+	/**
+	 * Trigger the sensors of the slot together and collect the echoes
+	 * 
+	 * @param slot
+	 *            slot id[IN]
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private void slotRun(int slot) throws IOException, InterruptedException {
+		int begin = slotStart[slot];
+		int end = slotStart[slot + 1];
+		if (begin >= end)
+			return;
+		long timeout = 0;
+		for (int i = begin; i < end; i++) {
+			TiHCSR04 sensor = sensorList[slotOrder[i]];
+			if (sensor.echoTimeout() > timeout)
+				timeout = sensor.echoTimeout();
+			sensor.triggerBegin();
+		}
+		Delay.msDelay(1);
+		for (int i = begin; i < end; i++) {
+			sensorList[slotOrder[i]].triggerEnd();
+		}
+		long deadline = System.currentTimeMillis() + timeout;
+		for (int i = begin; i < end; i++) {
+			int index = slotOrder[i];
+			TiHCSR04 sensor = sensorList[index];
+			double distance = sensor.toDistance(sensor.echoCollect(deadline));
+			synchronized (this) {
+				snapDistance[index] = distance;
+			}
+		}
+	}
+
+	/**
+	 * Run the scheduling cycles until stopped
+	 */
+	private void scheduleLoop() {
+		try {
+			while (running) {
+				long cycleTime = System.currentTimeMillis();
+				for (int slot = 0; slot < slotStart.length - 1 && running; slot++) {
+					slotRun(slot);
+					if (guardTime > 0)
+						Delay.msDelay(guardTime);
+				}
+				synchronized (this) {
+					cycleCount++;
+					long timeLeft = cycleTime + cyclePeriod - System.currentTimeMillis();
+					if (running && timeLeft > 0)
+						wait(timeLeft);
+				}
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				schedError = e;
+			}
+			running = false;
+		} catch (InterruptedException e) {
+			synchronized (this) {
+				schedError = new IOException("interrupted.");
+			}
+			running = false;
+		}
+		synchronized (this) {
+			for (int i = 0; i < sensorList.length; i++) {
+				sensorList[i].release(this);
+			}
+			schedThread = null;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Start the scheduling thread, the sensors are owned by the scheduler
+	 * until it stops, their single and continuous measurements are rejected
+	 * 
+	 * @throws IOException
+	 */
+	public void start() throws IOException {
+		synchronized (this) {
+			if (running || schedThread != null)
+				throw new IOException("busy.");
+			for (int i = 0; i < sensorList.length; i++) {
+				if (!sensorList[i].acquire(this)) {
+					while (--i >= 0)
+						sensorList[i].release(this);
+					throw new IOException("sensor busy.");
+				}
+			}
+			slotBuild();
+			schedError = null;
+			running = true;
+			schedThread = new Thread(new Runnable() {
+				public void run() {
+					scheduleLoop();
+				}
+			});
+			schedThread.start();
+		}
+	}
+
+	/**
+	 * Stop the scheduling thread, wait for the thread to exit
+	 */
+	public void stop() {
+		synchronized (this) {
+			running = false;
+			notifyAll();
+			while (schedThread != null) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check if the scheduling thread is running
+	 * 
+	 * @return true or false
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Gets the IO error which stopped the scheduling thread, a stop by stop()
+	 * is not an error
+	 * 
+	 * @return IO exception, null:no error
+	 */
+	public IOException getError() {
+		synchronized (this) {
+			return schedError;
+		}
+	}
+
+	/**
+	 * Copy the distance snapshot of all sensors, unit:m
+	 * 
+	 * @param distances
+	 *            distance list, NaN:no echo, the length should be not less
+	 *            than the sensor number[OUT]
+	 * @return scheduling cycle count
+	 */
+	public long getDistances(double[] distances) {
+		synchronized (this) {
+			System.arraycopy(snapDistance, 0, distances, 0, snapDistance.length);
+			return cycleCount;
+		}
+	}
+
+	/**
+	 * Gets the latest distance of the sensor, unit:m
+	 * 
+	 * @param index
+	 *            sensor index[IN]
+	 * @return distance, NaN:no echo
+	 */
+	public double getDistance(int index) {
+		synchronized (this) {
+			return snapDistance[index];
+		}
+	}
+
+	/**
+	 * Gets the sensor number
+	 * 
+	 * @return sensor number
+	 */
+	public int getSensorNumber() {
+		return sensorList.length;
+	}
+}
@@ -0,0 +1,18 @@
+package tijos.framework.sensor.mq;
+
+/*
+ * Analog threshold listener for TiMQ
+ * 
+ */
+public interface ITiMQAnalogEventListener {
+
+	/**
+	 * notification of the software threshold on AOUT
+	 * 
+	 * @param mq the current MQn object
+	 * @param threshold the threshold id
+	 * @param active true:beyond the threshold, false:cleared
+	 * @param value the AOUT raw value
+	 */
+	public void onAnalogThreshold(TiMQ mq, int threshold, boolean active, int value);
+}
@@ -4,53 +4,48 @@ import java.io.IOException;
 
 import tijos.framework.devicecenter.TiADC;
 import tijos.framework.devicecenter.TiGPIO;
-import tijos.framework.eventcenter.ITiEvent;
-import tijos.framework.eventcenter.ITiEventListener;
-import tijos.framework.eventcenter.TiEventService;
-import tijos.framework.eventcenter.TiEventType;
-import tijos.framework.eventcenter.TiGPIOEvent;
+import tijos.framework.sensor.common.TiSignalSensor;
 
-public class TiMQ implements ITiEventListener {
+public class TiMQ extends TiSignalSensor {
 	/**
-	 * TiMQn signal pin id
+	 * Gas curve of the ppm conversion, null:none
 	 */
-	private int signalPin;
+	private TiMQCurve ppmCurve = null;
 	/**
-	 * TiMQn analog channel id
+	 * R0 in units of the load resistance, <=0:not calibrated
 	 */
-	private int analogChannel;
+	private double ppmR0;
 	/**
-	 * TiMQn event time
+	 * ADC resolution, unit:bit
 	 */
-	private long eventTime;
+	private int adcBits;
 	/**
-	 * TiGPIO object
+	 * Raw value to ppm table, clamped to 65535ppm, null:not compiled
 	 */
-	private TiGPIO gpioObj = null;
+	private char[] ppmTable = null;
 	/**
-	 * TiADC object
+	 * Analog threshold listener
 	 */
-	private TiADC adcObj = null;
+	private ITiMQAnalogEventListener analogLc = null;
 	/**
 	 * TiMQn event listener
 	 */
 	private ITiMQEventListener mq2Lc = null;
 
 	@Override
-	public TiEventType getType() {
-		return TiEventType.GPIO;
+	protected void signalNotify() {
+		if (mq2Lc != null)
+			mq2Lc.onThresholdNotify(this);
 	}
 
 	@Override
-	public void onEvent(ITiEvent evt) {
+	protected void analogNotify(int threshold, boolean active, int value) {
+		ITiMQAnalogEventListener lc;
 		synchronized (this) {
-			TiGPIOEvent event = (TiGPIOEvent) evt;
-			if (event.getPin() == signalPin) {
-				eventTime = event.getTime();
-				if (mq2Lc != null)
-					mq2Lc.onThresholdNotify(this);
-			}
+			lc = analogLc;
 		}
+		if (lc != null)
+			lc.onAnalogThreshold(this, threshold, active, value);
 	}
 
 	/**
@@ -63,12 +58,10 @@ public class TiMQ implements ITiEventListener {
 	public void setEventListener(ITiMQEventListener lc) throws IOException {
 		synchronized (this) {
 			if (mq2Lc == null && lc != null) {
-				gpioObj.setEventParameters(signalPin, TiGPIO.EVT_BOTHEDGE, 10000);// >=10ms
-				TiEventService.getInstance().addListener(this);
+				eventEnable(true);
 				mq2Lc = lc;
 			} else if (mq2Lc != null && lc == null) {
-				gpioObj.setEventParameters(signalPin, TiGPIO.EVT_NONE, 0);
-				TiEventService.getInstance().unregisterEvent(this);
+				eventEnable(false);
 				mq2Lc = null;
 			} else {
 			}
@@ -86,10 +79,7 @@ public class TiMQ implements ITiEventListener {
 	 * @throws IOException
 	 */
 	public TiMQ(TiGPIO gpio, int signalPinID) throws IOException {
-		gpio.setWorkMode(signalPinID, TiGPIO.INPUT_FLOATING);
-		gpioObj = gpio;
-		signalPin = signalPinID;
-		eventTime = -1;
+		this(gpio, signalPinID, null, 0);
 	}
 
 	/**
@@ -106,60 +96,145 @@ public class TiMQ implements ITiEventListener {
 	 * @throws IOException
 	 */
 	public TiMQ(TiGPIO gpio, int signalPinID, TiADC adc, int analogChannelID) throws IOException {
-		this(gpio, signalPinID);
-		adcObj = adc;
-		analogChannel = analogChannelID;
+		super(gpio, signalPinID, adc, analogChannelID, 10000);// >=10ms
+		ppmR0 = -1;
+		adcBits = 12;
 	}
 
 	/**
-	 * Gets the event time
+	 * Set the gas curve of the ppm conversion, the curve is compiled to a raw
+	 * value to ppm table when R0 is known, the table takes 2 bytes per raw
+	 * value(8KB for 12 bits)
 	 * 
-	 * @return event time, unit:us
+	 * @param curve
+	 *            gas curve[IN]
+	 * @param bits
+	 *            ADC resolution, unit:bit, 1..12[IN]
 	 */
-	public long getEventTime() {
-		return eventTime;
+	public void setPPMCurve(TiMQCurve curve, int bits) {
+		if (curve == null || bits < 1 || bits > 12)
+			throw new IllegalArgumentException("invalid parameters.");
+		synchronized (this) {
+			ppmCurve = curve;
+			adcBits = bits;
+			ppmCompile();
+		}
 	}
 
 	/**
-	 * Check if greater than the threshold value
+	 * Calibrate R0 in clean air with the clean air ratio of the gas curve,
+	 * the sampler average is used if the sampler is set
 	 * 
-	 * @return true or false
+	 * @return R0, unit:load resistance
 	 * @throws IOException
 	 */
-	public boolean isGreaterThanThreshold() throws IOException {
-		return gpioObj.readPin(signalPin) == 0;
+	public double calibrate() throws IOException {
+		if (!hasAnalog())
+			throw new IOException("no adc.");
+		double raw;
+		synchronized (this) {
+			if (ppmCurve == null)
+				throw new IOException("no curve.");
+			raw = (getAnalogCount() > 0) ? getAnalogAverage() : -1;
+		}
+		if (raw < 0)
+			raw = getAnalogOutput();
+		int max = (1 << adcBits) - 1;
+		if (raw <= 0 || raw >= max)
+			throw new IOException("calibration error.");
+		synchronized (this) {
+			ppmR0 = ((max - raw) / raw) / ppmCurve.getCleanAirRatio();
+			ppmCompile();
+			return ppmR0;
+		}
 	}
 
 	/**
-	 * Gets the analog output value of AOUT
+	 * Set R0 saved by a calibration before
 	 * 
-	 * @return raw value  
+	 * @param r0
+	 *            R0, unit:load resistance[IN]
+	 */
+	public void setR0(double r0) {
+		if (r0 <= 0)
+			throw new IllegalArgumentException("invalid r0.");
+		synchronized (this) {
+			ppmR0 = r0;
+			ppmCompile();
+		}
+	}
+
+	/**
+	 * Gets R0
+	 * 
+	 * @return R0, unit:load resistance, <=0:not calibrated
+	 */
+	public double getR0() {
+		synchronized (this) {
+			return ppmR0;
+		}
+	}
+
+	/**
+	 * Gets the gas concentration of AOUT by the ppm table
+	 * 
+	 * @return ppm, 0..65535, -1:no curve or not calibrated
 	 * @throws IOException
 	 */
-	public int getAnalogOutput() throws IOException {
-		if (adcObj == null)
-			return 0;
-		
-		return adcObj.getRawValue(analogChannel);
+	public int getPPM() throws IOException {
+		char[] table;
+		synchronized (this) {
+			table = ppmTable;
+		}
+		if (table == null)
+			return -1;
+		int raw = getAnalogOutput();
+		if (raw < 0)
+			raw = 0;
+		else if (raw >= table.length)
+			raw = table.length - 1;
+		return table[raw];
 	}
 
 	/**
-	 * Gets the value of DOUT
+	 * Compile the gas curve and R0 to the raw value to ppm table, Rs is in
+	 * units of the load resistance, Rs = (max - raw) / raw
+	 */
+	private void ppmCompile() {
+		if (ppmCurve == null || ppmR0 <= 0) {
+			ppmTable = null;
+			return;
+		}
+		int max = (1 << adcBits) - 1;
+		char[] table = new char[max + 1];
+		table[0] = 0;
+		for (int raw = 1; raw <= max; raw++) {
+			int ppm = ppmCurve.toPPM((double) (max - raw) / raw / ppmR0);
+			table[raw] = (char) ((ppm > 0xFFFF) ? 0xFFFF : ppm);
+		}
+		ppmTable = table;
+	}
+
+	/**
+	 * Check if greater than the threshold value
 	 * 
-	 * @return level
+	 * @return true or false
 	 * @throws IOException
 	 */
-	public int getDigitalOutput() throws IOException {
-		return gpioObj.readPin(signalPin);
+	public boolean isGreaterThanThreshold() throws IOException {
+		return getDigitalOutput() == 0;
 	}
 
 	/**
-	 * Gets the signal pin id
+	 * Set the analog threshold listener
 	 * 
-	 * @return pin id
+	 * @param lc
+	 *            listener object or null[IN]
 	 */
-	public int getSignalPinID() {
-		return signalPin;
+	public void setAnalogEventListener(ITiMQAnalogEventListener lc) {
+		synchronized (this) {
+			analogLc = lc;
+		}
 	}
 
 }
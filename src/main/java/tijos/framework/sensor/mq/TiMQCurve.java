@@ -0,0 +1,147 @@
+package tijos.framework.sensor.mq;
+
+/**
+ * 
+ * MQ gas curve, ppm = a * (Rs/R0)^b fitted on the datasheet log-log curve,
+ * with the Rs/R0 ratio in clean air used by the R0 calibration
+ */
+public class TiMQCurve {
+	/**
+	 * MQ-2 LPG
+	 */
+	public static final TiMQCurve MQ2_LPG = new TiMQCurve("MQ-2 LPG", 574.25, -2.222, 9.83, 10000);
+	/**
+	 * MQ-2 CO
+	 */
+	public static final TiMQCurve MQ2_CO = new TiMQCurve("MQ-2 CO", 36974, -3.109, 9.83, 10000);
+	/**
+	 * MQ-2 H2
+	 */
+	public static final TiMQCurve MQ2_H2 = new TiMQCurve("MQ-2 H2", 987.99, -2.162, 9.83, 10000);
+	/**
+	 * MQ-2 alcohol
+	 */
+	public static final TiMQCurve MQ2_ALCOHOL = new TiMQCurve("MQ-2 alcohol", 3616.1, -2.675, 9.83, 10000);
+	/**
+	 * MQ-2 propane
+	 */
+	public static final TiMQCurve MQ2_PROPANE = new TiMQCurve("MQ-2 propane", 658.71, -2.168, 9.83, 10000);
+	/**
+	 * MQ-7 CO
+	 */
+	public static final TiMQCurve MQ7_CO = new TiMQCurve("MQ-7 CO", 99.042, -1.518, 27.5, 4000);
+	/**
+	 * MQ-7 H2
+	 */
+	public static final TiMQCurve MQ7_H2 = new TiMQCurve("MQ-7 H2", 69.014, -1.374, 27.5, 4000);
+	/**
+	 * MQ-135 CO2
+	 */
+	public static final TiMQCurve MQ135_CO2 = new TiMQCurve("MQ-135 CO2", 110.47, -2.862, 3.6, 10000);
+	/**
+	 * MQ-135 NH4
+	 */
+	public static final TiMQCurve MQ135_NH4 = new TiMQCurve("MQ-135 NH4", 102.2, -2.473, 3.6, 10000);
+	/**
+	 * MQ-135 CO
+	 */
+	public static final TiMQCurve MQ135_CO = new TiMQCurve("MQ-135 CO", 605.18, -3.937, 3.6, 10000);
+	/**
+	 * MQ-135 alcohol
+	 */
+	public static final TiMQCurve MQ135_ALCOHOL = new TiMQCurve("MQ-135 alcohol", 77.255, -3.18, 3.6, 10000);
+	/**
+	 * MQ-135 toluene
+	 */
+	public static final TiMQCurve MQ135_TOLUENE = new TiMQCurve("MQ-135 toluene", 44.947, -3.445, 3.6, 10000);
+	/**
+	 * MQ-135 acetone
+	 */
+	public static final TiMQCurve MQ135_ACETONE = new TiMQCurve("MQ-135 acetone", 34.668, -3.369, 3.6, 10000);
+
+	/**
+	 * Curve name
+	 */
+	private String curveName;
+	/**
+	 * Curve factor a
+	 */
+	private double curveA;
+	/**
+	 * Curve exponent b
+	 */
+	private double curveB;
+	/**
+	 * Rs/R0 in clean air
+	 */
+	private double cleanAirRatio;
+	/**
+	 * Max ppm, the converted values are clamped to it
+	 */
+	private int maxPPM;
+
+	/**
+	 * TiMQCurve initialization
+	 * 
+	 * @param name
+	 *            curve name[IN]
+	 * @param a
+	 *            curve factor[IN]
+	 * @param b
+	 *            curve exponent[IN]
+	 * @param cleanAir
+	 *            Rs/R0 in clean air[IN]
+	 * @param max
+	 *            max ppm[IN]
+	 */
+	public TiMQCurve(String name, double a, double b, double cleanAir, int max) {
+		if (a <= 0 || cleanAir <= 0 || max <= 0)
+			throw new IllegalArgumentException("invalid parameters.");
+		curveName = name;
+		curveA = a;
+		curveB = b;
+		cleanAirRatio = cleanAir;
+		maxPPM = max;
+	}
+
+	/**
+	 * Gets the ppm of a Rs/R0 ratio
+	 * 
+	 * @param ratio
+	 *            Rs/R0[IN]
+	 * @return ppm, clamped to the max ppm
+	 */
+	public int toPPM(double ratio) {
+		if (ratio <= 0)
+			return maxPPM;
+		double ppm = curveA * Math.pow(ratio, curveB);
+		return (ppm >= maxPPM) ? maxPPM : (int) (ppm + 0.5);
+	}
+
+	/**
+	 * Gets the curve name
+	 * 
+	 * @return name
+	 */
+	public String getName() {
+		return curveName;
+	}
+
+	/**
+	 * Gets the Rs/R0 ratio in clean air
+	 * 
+	 * @return ratio
+	 */
+	public double getCleanAirRatio() {
+		return cleanAirRatio;
+	}
+
+	/**
+	 * Gets the max ppm
+	 * 
+	 * @return ppm
+	 */
+	public int getMaxPPM() {
+		return maxPPM;
+	}
+}
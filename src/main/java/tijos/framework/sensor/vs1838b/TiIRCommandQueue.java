@@ -0,0 +1,220 @@
+package tijos.framework.sensor.vs1838b;
+
+/**
+ * 
+ * Bounded single-producer single-consumer queue of decoded IR commands, the
+ * entries are kept in preallocated primitive arrays, the producer never blocks
+ * and counts the overflow
+ */
+class TiIRCommandQueue {
+	/**
+	 * Entry address list
+	 */
+	private int[] qAddr;
+	/**
+	 * Entry command list
+	 */
+	private int[] qCmd;
+	/**
+	 * Entry tag list, the protocol index
+	 */
+	private int[] qTag;
+	/**
+	 * Entry repeat flag list
+	 */
+	private boolean[] qRepeat;
+	/**
+	 * Entry timestamp list, unit:us
+	 */
+	private long[] qTime;
+	/**
+	 * Slot index mask
+	 */
+	private int qMask;
+	/**
+	 * Write sequence, updated by the producer only
+	 */
+	private volatile int qHead;
+	/**
+	 * Read sequence, updated by the consumer only
+	 */
+	private volatile int qTail;
+	/**
+	 * Overflow count, updated by the producer only
+	 */
+	private volatile int qOverflow;
+	/**
+	 * Consumer waiting flag
+	 */
+	private volatile boolean qWaiting;
+	/**
+	 * Address of the taken entry
+	 */
+	private int curAddr;
+	/**
+	 * Command of the taken entry
+	 */
+	private int curCmd;
+	/**
+	 * Tag of the taken entry
+	 */
+	private int curTag;
+	/**
+	 * Repeat flag of the taken entry
+	 */
+	private boolean curRepeat;
+	/**
+	 * Timestamp of the taken entry
+	 */
+	private long curTime;
+
+	/**
+	 * TiIRCommandQueue initialization
+	 * 
+	 * @param capacity
+	 *            entry number, rounded up to power of 2[IN]
+	 */
+	TiIRCommandQueue(int capacity) {
+		int size = 1;
+		while (size < capacity)
+			size <<= 1;
+		qAddr = new int[size];
+		qCmd = new int[size];
+		qTag = new int[size];
+		qRepeat = new boolean[size];
+		qTime = new long[size];
+		qMask = size - 1;
+	}
+
+	/**
+	 * Put an entry, called by the producer
+	 * 
+	 * @param addr
+	 *            address[IN]
+	 * @param cmd
+	 *            command[IN]
+	 * @param tag
+	 *            tag[IN]
+	 * @param repeat
+	 *            repeat flag[IN]
+	 * @param time
+	 *            timestamp, unit:us[IN]
+	 * @return true:queued, false:overflow
+	 */
+	boolean offer(int addr, int cmd, int tag, boolean repeat, long time) {
+		int head = qHead;
+		if (head - qTail > qMask) {
+			qOverflow++;
+			return false;
+		}
+		int slot = head & qMask;
+		qAddr[slot] = addr;
+		qCmd[slot] = cmd;
+		qTag[slot] = tag;
+		qRepeat[slot] = repeat;
+		qTime[slot] = time;
+		qHead = head + 1;
+		if (qWaiting) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Take the oldest entry, called by the consumer
+	 * 
+	 * @param timeout
+	 *            max wait time, unit:ms[IN]
+	 * @return true:entry taken, false:timeout or wakeup
+	 * @throws InterruptedException
+	 */
+	boolean take(long timeout) throws InterruptedException {
+		int tail = qTail;
+		if (qHead == tail) {
+			synchronized (this) {
+				qWaiting = true;
+				try {
+					if (qHead == tail)
+						wait(timeout);
+				} finally {
+					qWaiting = false;
+				}
+			}
+			if (qHead == tail)
+				return false;
+		}
+		int slot = tail & qMask;
+		curAddr = qAddr[slot];
+		curCmd = qCmd[slot];
+		curTag = qTag[slot];
+		curRepeat = qRepeat[slot];
+		curTime = qTime[slot];
+		qTail = tail + 1;
+		return true;
+	}
+
+	/**
+	 * Wake up the waiting consumer
+	 */
+	void wakeup() {
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Gets the overflow count
+	 * 
+	 * @return overflow count
+	 */
+	int getOverflowCount() {
+		return qOverflow;
+	}
+
+	/**
+	 * Gets the address of the taken entry
+	 * 
+	 * @return address
+	 */
+	int getAddress() {
+		return curAddr;
+	}
+
+	/**
+	 * Gets the command of the taken entry
+	 * 
+	 * @return command
+	 */
+	int getCommand() {
+		return curCmd;
+	}
+
+	/**
+	 * Gets the tag of the taken entry
+	 * 
+	 * @return tag
+	 */
+	int getTag() {
+		return curTag;
+	}
+
+	/**
+	 * Check if the taken entry is a repeat
+	 * 
+	 * @return true or false
+	 */
+	boolean isRepeat() {
+		return curRepeat;
+	}
+
+	/**
+	 * Gets the timestamp of the taken entry
+	 * 
+	 * @return timestamp, unit:us
+	 */
+	long getTime() {
+		return curTime;
+	}
+}
@@ -0,0 +1,492 @@
+package tijos.framework.sensor.vs1838b;
+
+/**
+ * 
+ * Table-driven IR decoder, the mark/space stream is fed to all the protocol
+ * descriptors in parallel, the state of each protocol is kept in preallocated
+ * primitive arrays, when several protocols complete a frame at the same item
+ * the one with the most bits wins, then the first one in priority order, a
+ * pulse width frame is completed by the gap after its last mark
+ */
+public class TiIRDecoder {
+	/**
+	 * Waiting for the header mark or the first mark
+	 */
+	private static final int STEP_IDLE = 0;
+	/**
+	 * Waiting for the header space or the repeat space
+	 */
+	private static final int STEP_HEADER = 1;
+	/**
+	 * Waiting for the bit mark, or any item of bi-phase
+	 */
+	private static final int STEP_MARK = 2;
+	/**
+	 * Waiting for the bit space
+	 */
+	private static final int STEP_SPACE = 3;
+	/**
+	 * Waiting for the gap after the last mark of a pulse width frame
+	 */
+	private static final int STEP_TRAIL = 4;
+
+	/**
+	 * Protocol descriptor list
+	 */
+	private TiIRProtocol[] protoList;
+	/**
+	 * Decoding step of each protocol
+	 */
+	private int[] protoStep;
+	/**
+	 * Data bits of each protocol, unit levels of bi-phase
+	 */
+	private long[] protoData;
+	/**
+	 * Bit count of each protocol, unit count of bi-phase
+	 */
+	private int[] protoCount;
+	/**
+	 * Last address of each protocol, -1:none
+	 */
+	private int[] lastAddr;
+	/**
+	 * Last command of each protocol
+	 */
+	private int[] lastCmd;
+	/**
+	 * Last toggle bit of each protocol
+	 */
+	private int[] lastToggle;
+	/**
+	 * Length of the last space
+	 */
+	private int lastSpace;
+	/**
+	 * Protocol index of the decoded frame, -1:none
+	 */
+	private int resIndex;
+	/**
+	 * Address of the decoded frame
+	 */
+	private int resAddr;
+	/**
+	 * Command of the decoded frame
+	 */
+	private int resCmd;
+	/**
+	 * Repeat flag of the decoded frame
+	 */
+	private boolean resRepeat;
+	/**
+	 * A frame is decoded by the current item
+	 */
+	private boolean resFound;
+
+	/**
+	 * TiIRDecoder initialization
+	 * 
+	 * @param protocols
+	 *            protocol descriptor list, in priority order[IN]
+	 */
+	public TiIRDecoder(TiIRProtocol[] protocols) {
+		protoList = new TiIRProtocol[protocols.length];
+		System.arraycopy(protocols, 0, protoList, 0, protocols.length);
+		protoStep = new int[protocols.length];
+		protoData = new long[protocols.length];
+		protoCount = new int[protocols.length];
+		lastAddr = new int[protocols.length];
+		lastCmd = new int[protocols.length];
+		lastToggle = new int[protocols.length];
+		reset();
+	}
+
+	/**
+	 * Reset the decoding state of all protocols
+	 */
+	public void reset() {
+		for (int i = 0; i < protoList.length; i++) {
+			protoStep[i] = STEP_IDLE;
+			lastAddr[i] = -1;
+			lastCmd[i] = -1;
+			lastToggle[i] = -1;
+		}
+		lastSpace = Integer.MAX_VALUE;
+		resIndex = -1;
+		resAddr = -1;
+		resCmd = -1;
+		resRepeat = false;
+	}
+
+	/**
+	 * Feed a mark or space to the decoder
+	 * 
+	 * @param mark
+	 *            true:mark(carrier on), false:space[IN]
+	 * @param time
+	 *            length, unit:us[IN]
+	 * @return true:a frame is decoded, false:no frame
+	 */
+	public boolean feed(boolean mark, int time) {
+		boolean decoded = false;
+		resFound = false;
+		for (int i = 0; i < protoList.length; i++) {
+			if (protoFeed(i, mark, time))
+				decoded = true;
+		}
+		if (decoded) {
+			for (int i = 0; i < protoList.length; i++) {
+				protoStep[i] = STEP_IDLE;
+			}
+		}
+		if (!mark)
+			lastSpace = time;
+		return decoded;
+	}
+
+	/**
+	 * Feed the idle time since the last edge as the gap of the pulse width
+	 * frames waiting for it, nothing is done before the gap is long enough
+	 * 
+	 * @param time
+	 *            idle time, unit:us[IN]
+	 * @return true:a frame is decoded, false:no frame
+	 */
+	public boolean flush(int time) {
+		boolean trailing = false;
+		for (int i = 0; i < protoList.length; i++) {
+			if (protoStep[i] != STEP_TRAIL)
+				continue;
+			if (time < protoList[i].gapMin)
+				return false;
+			trailing = true;
+		}
+		return trailing && feed(false, time);
+	}
+
+	/**
+	 * Check if a pulse width frame is waiting for its gap
+	 * 
+	 * @return true or false
+	 */
+	public boolean isTrailing() {
+		for (int i = 0; i < protoList.length; i++) {
+			if (protoStep[i] == STEP_TRAIL)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Feed a mark or space to a protocol
+	 * 
+	 * @param i
+	 *            protocol index[IN]
+	 * @param mark
+	 *            true:mark, false:space[IN]
+	 * @param time
+	 *            length, unit:us[IN]
+	 * @return true:a frame is decoded, false:no frame
+	 */
+	private boolean protoFeed(int i, boolean mark, int time) {
+		TiIRProtocol p = protoList[i];
+		switch (protoStep[i]) {
+		case STEP_IDLE:
+			break;
+		case STEP_HEADER:
+			if (!mark && p.match(time, TiIRProtocol.T_HEADER_SPACE)) {
+				frameBegin(i);
+				return false;
+			}
+			if (!mark && p.repeatSpace > 0 && p.match(time, TiIRProtocol.T_REPEAT_SPACE)) {
+				protoStep[i] = STEP_IDLE;
+				if (lastAddr[i] < 0)
+					return false;
+				return result(i, lastAddr[i], lastCmd[i], true);
+			}
+			break;
+		default:
+			int state = (p.encoding == TiIRProtocol.ENCODING_BIPHASE) ? biphaseFeed(i, mark, time)
+					: pulseFeed(i, mark, time);
+			if (state > 0)
+				return frameEnd(i);
+			if (state == 0)
+				return false;
+			break;
+		}
+		protoStep[i] = STEP_IDLE;
+		if (!mark)
+			return false;
+		if (p.headerMark > 0) {
+			if (p.match(time, TiIRProtocol.T_HEADER_MARK))
+				protoStep[i] = STEP_HEADER;
+		} else if (p.encoding == TiIRProtocol.ENCODING_BIPHASE && lastSpace >= p.gapMin) {
+			frameBegin(i);
+			if (!p.markFirstOne)
+				protoCount[i] = 1;
+			if (biphaseFeed(i, true, time) < 0)
+				protoStep[i] = STEP_IDLE;
+		}
+		return false;
+	}
+
+	/**
+	 * Start the data bits of a frame
+	 * 
+	 * @param i
+	 *            protocol index[IN]
+	 */
+	private void frameBegin(int i) {
+		protoStep[i] = STEP_MARK;
+		protoData[i] = 0;
+		protoCount[i] = 0;
+	}
+
+	/**
+	 * Feed a mark or space to a pulse distance or pulse width protocol
+	 * 
+	 * @param i
+	 *            protocol index[IN]
+	 * @param mark
+	 *            true:mark, false:space[IN]
+	 * @param time
+	 *            length, unit:us[IN]
+	 * @return 1:frame completed, 0:in progress, -1:error
+	 */
+	private int pulseFeed(int i, boolean mark, int time) {
+		TiIRProtocol p = protoList[i];
+		if (protoStep[i] == STEP_TRAIL)
+			return (!mark && time >= p.gapMin) ? 1 : -1;
+		int bit;
+		if (protoStep[i] == STEP_MARK) {
+			if (!mark)
+				return -1;
+			if (p.encoding == TiIRProtocol.ENCODING_PULSE_DISTANCE) {
+				if (!p.match(time, TiIRProtocol.T_MARK0))
+					return -1;
+				protoStep[i] = STEP_SPACE;
+				return 0;
+			}
+			if (p.match(time, TiIRProtocol.T_MARK0))
+				bit = 0;
+			else if (p.match(time, TiIRProtocol.T_MARK1))
+				bit = 1;
+			else
+				return -1;
+		} else {
+			if (mark)
+				return -1;
+			if (p.encoding == TiIRProtocol.ENCODING_PULSE_WIDTH) {
+				if (!p.match(time, TiIRProtocol.T_SPACE0))
+					return -1;
+				protoStep[i] = STEP_MARK;
+				return 0;
+			}
+			if (p.match(time, TiIRProtocol.T_SPACE0))
+				bit = 0;
+			else if (p.match(time, TiIRProtocol.T_SPACE1))
+				bit = 1;
+			else
+				return -1;
+		}
+		if (p.msbFirst)
+			protoData[i] = (protoData[i] << 1) | bit;
+		else
+			protoData[i] |= ((long) bit) << protoCount[i];
+		protoCount[i]++;
+		if (protoCount[i] >= p.bits) {
+			if (p.encoding != TiIRProtocol.ENCODING_PULSE_WIDTH)
+				return 1;
+			// a longer variant may go on, wait for the gap
+			protoStep[i] = STEP_TRAIL;
+			return 0;
+		}
+		protoStep[i] = (p.encoding == TiIRProtocol.ENCODING_PULSE_DISTANCE) ? STEP_MARK : STEP_SPACE;
+		return 0;
+	}
+
+	/**
+	 * Feed a mark or space to a bi-phase protocol, the levels are saved by
+	 * half bit units
+	 * 
+	 * @param i
+	 *            protocol index[IN]
+	 * @param mark
+	 *            true:mark, false:space[IN]
+	 * @param time
+	 *            length, unit:us[IN]
+	 * @return 1:frame completed, 0:in progress, -1:error
+	 */
+	private int biphaseFeed(int i, boolean mark, int time) {
+		TiIRProtocol p = protoList[i];
+		int n = p.units(time);
+		int count = protoCount[i];
+		if (n == 0 || count + n > p.totalUnits)
+			return -1;
+		if (mark)
+			protoData[i] |= ((1L << n) - 1) << count;
+		protoCount[i] = count + n;
+		return (count + n >= p.totalUnits - 1) ? 1 : 0;
+	}
+
+	/**
+	 * Convert the half bit units of a bi-phase frame to data bits, the last
+	 * unit merged with the idle space is the inverse of the previous one
+	 * 
+	 * @param i
+	 *            protocol index[IN]
+	 * @return data bits, -1:invalid transition
+	 */
+	private long biphaseBits(int i) {
+		TiIRProtocol p = protoList[i];
+		long units = protoData[i];
+		int total = p.totalUnits;
+		if (protoCount[i] < total && ((units >>> (total - 2)) & 1) == 0)
+			units |= 1L << (total - 1);
+		long data = 0;
+		for (int b = 0; b < p.bits; b++) {
+			int u = (p.trailerBit >= 0 && b > p.trailerBit) ? b * 2 + 2 : b * 2;
+			int w = (b == p.trailerBit) ? 2 : 1;
+			int first = (int) (units >>> u) & 1;
+			int second = (int) (units >>> (u + w)) & 1;
+			if (first == second)
+				return -1;
+			if (w == 2 && (((units >>> (u + 1)) & 1) != first || ((units >>> (u + 3)) & 1) != second))
+				return -1;
+			data = (data << 1) | (p.markFirstOne ? first : 1 - first);
+		}
+		return data;
+	}
+
+	/**
+	 * Check and extract the fields of a completed frame
+	 * 
+	 * @param i
+	 *            protocol index[IN]
+	 * @return true:a frame is decoded, false:check error
+	 */
+	private boolean frameEnd(int i) {
+		TiIRProtocol p = protoList[i];
+		protoStep[i] = STEP_IDLE;
+		long data = protoData[i];
+		if (p.encoding == TiIRProtocol.ENCODING_BIPHASE) {
+			data = biphaseBits(i);
+			if (data < 0)
+				return false;
+		}
+		switch (p.check) {
+		case TiIRProtocol.CHECK_NEC:
+			if (((data >> 8) & 0xff) != (~data & 0xff) || ((data >> 24) & 0xff) != (~(data >> 16) & 0xff))
+				return false;
+			break;
+		case TiIRProtocol.CHECK_NEC_EXT:
+			if (((data >> 24) & 0xff) != (~(data >> 16) & 0xff))
+				return false;
+			break;
+		case TiIRProtocol.CHECK_RC5:
+			if (((data >> 13) & 1) == 0)
+				return false;
+			break;
+		case TiIRProtocol.CHECK_RC6:
+			if (((data >> 20) & 1) == 0 || ((data >> 17) & 7) != 0)
+				return false;
+			break;
+		default:
+			break;
+		}
+		int addr = (int) ((data >>> p.addrShift) & ((1L << p.addrBits) - 1));
+		int cmd = (int) ((data >>> p.cmdShift) & ((1L << p.cmdBits) - 1));
+		if (p.check == TiIRProtocol.CHECK_RC5 && ((data >> 12) & 1) == 0)
+			cmd |= 0x40;
+		boolean repeat = false;
+		if (p.toggleShift >= 0) {
+			int toggle = (int) (data >>> p.toggleShift) & 1;
+			repeat = (toggle == lastToggle[i] && addr == lastAddr[i] && cmd == lastCmd[i]);
+			lastToggle[i] = toggle;
+		}
+		lastAddr[i] = addr;
+		lastCmd[i] = cmd;
+		return result(i, addr, cmd, repeat);
+	}
+
+	/**
+	 * Save the decoded frame, a frame decoded by the same item with more bits
+	 * is kept
+	 * 
+	 * @param i
+	 *            protocol index[IN]
+	 * @param addr
+	 *            address[IN]
+	 * @param cmd
+	 *            command[IN]
+	 * @param repeat
+	 *            repeat flag[IN]
+	 * @return true
+	 */
+	private boolean result(int i, int addr, int cmd, boolean repeat) {
+		if (resFound && protoList[resIndex].bits >= protoList[i].bits)
+			return true;
+		resFound = true;
+		resIndex = i;
+		resAddr = addr;
+		resCmd = cmd;
+		resRepeat = repeat;
+		return true;
+	}
+
+	/**
+	 * Gets the protocol of the last decoded frame
+	 * 
+	 * @return protocol descriptor, null:no frame
+	 */
+	public TiIRProtocol getProtocol() {
+		return (resIndex < 0) ? null : protoList[resIndex];
+	}
+
+	/**
+	 * Gets the protocol index of the last decoded frame
+	 * 
+	 * @return protocol index in the descriptor list, -1:no frame
+	 */
+	public int getProtocolIndex() {
+		return resIndex;
+	}
+
+	/**
+	 * Gets the protocol descriptor by index
+	 * 
+	 * @param index
+	 *            protocol index[IN]
+	 * @return protocol descriptor
+	 */
+	public TiIRProtocol getProtocol(int index) {
+		return protoList[index];
+	}
+
+	/**
+	 * Gets the address of the last decoded frame
+	 * 
+	 * @return >=0:address, <0:no address
+	 */
+	public int getAddress() {
+		return resAddr;
+	}
+
+	/**
+	 * Gets the command of the last decoded frame
+	 * 
+	 * @return >=0:command, <0:no command
+	 */
+	public int getCommand() {
+		return resCmd;
+	}
+
+	/**
+	 * Check if the last decoded frame is a repeat
+	 * 
+	 * @return true or false
+	 */
+	public boolean isRepeat() {
+		return resRepeat;
+	}
+}
@@ -0,0 +1,482 @@
+package tijos.framework.sensor.vs1838b;
+
+/**
+ * 
+ * IR learner of raw mark/space trains, a frame is quantized by its shortest
+ * unit and packed to a byte array signature, the learned signatures are kept
+ * in a hash table,<br>
+ * an incoming frame is matched once at its end(a space of the gap time or an
+ * idle flush), by the hash first and then by the signatures of the same length
+ * with a tolerance of one unit per mark/space
+ */
+public class TiIRLearner {
+	/**
+	 * Max mark/space number of a frame
+	 */
+	private static final int MAX_ITEMS = 256;
+	/**
+	 * Signature header length, the base unit in big endian, unit:us
+	 */
+	private static final int SIG_HEADER = 2;
+
+	/**
+	 * Min space between frames, unit:us
+	 */
+	private int gapTime;
+	/**
+	 * Captured mark/space lengths
+	 */
+	private int[] capTime;
+	/**
+	 * Captured mark/space number
+	 */
+	private int capCount;
+	/**
+	 * Capturing flag
+	 */
+	private boolean capturing;
+	/**
+	 * Current frame is overflowed, ignored until the next gap
+	 */
+	private boolean capIgnored;
+	/**
+	 * The last space is a gap
+	 */
+	private boolean afterGap;
+	/**
+	 * Time of the last mark/space, unit:ms
+	 */
+	private long lastFeedTime;
+	/**
+	 * Quantized frame buffer
+	 */
+	private byte[] encBuf;
+	/**
+	 * Base unit of the quantized frame, unit:us
+	 */
+	private int encBase;
+	/**
+	 * Learned signature list
+	 */
+	private byte[][] sigList;
+	/**
+	 * Learned signature number
+	 */
+	private int sigCount;
+	/**
+	 * Hash table, signature hash of each slot
+	 */
+	private int[] tabHash;
+	/**
+	 * Hash table, signature index of each slot, -1:empty
+	 */
+	private int[] tabIndex;
+	/**
+	 * Frame length set of the learned signatures, bit index:length
+	 */
+	private long[] lengthSet;
+	/**
+	 * Learning flag
+	 */
+	private boolean learning;
+	/**
+	 * Signature index learned by the last learning, -1:none
+	 */
+	private int learnedIndex;
+
+	/**
+	 * TiIRLearner initialization, default:gap=10ms
+	 */
+	public TiIRLearner() {
+		this(10000);
+	}
+
+	/**
+	 * TiIRLearner initialization
+	 * 
+	 * @param gap
+	 *            min space between frames, unit:us[IN]
+	 */
+	public TiIRLearner(int gap) {
+		gapTime = gap;
+		capTime = new int[MAX_ITEMS];
+		encBuf = new byte[MAX_ITEMS];
+		sigList = new byte[8][];
+		tabHash = new int[16];
+		tabIndex = new int[16];
+		for (int i = 0; i < tabIndex.length; i++)
+			tabIndex[i] = -1;
+		lengthSet = new long[(MAX_ITEMS + 1 + 63) / 64];
+		afterGap = true;
+		learnedIndex = -1;
+	}
+
+	/**
+	 * Feed a mark or space to the learner, the frame is matched at the space
+	 * of the gap time
+	 * 
+	 * @param mark
+	 *            true:mark(carrier on), false:space[IN]
+	 * @param time
+	 *            length, unit:us[IN]
+	 * @return >=0:signature index matched, -1:no match
+	 */
+	public int feed(boolean mark, int time) {
+		synchronized (this) {
+			lastFeedTime = System.currentTimeMillis();
+			if (!mark) {
+				if (time >= gapTime) {
+					int index = frameEnd();
+					afterGap = true;
+					return index;
+				}
+				if (capturing && !capIgnored && !capAppend(time))
+					capIgnored = true;
+				return -1;
+			}
+			if (!capturing) {
+				if (!afterGap)
+					return -1;
+				capturing = true;
+				capIgnored = false;
+				capCount = 0;
+				afterGap = false;
+			}
+			if (!capIgnored && !capAppend(time))
+				capIgnored = true;
+			return -1;
+		}
+	}
+
+	/**
+	 * End the frame in capture when the input is idle for the gap time, the
+	 * last frame of a burst has no following space
+	 * 
+	 * @param idle
+	 *            idle time since the last mark/space, unit:us[IN]
+	 * @return >=0:signature index matched, -1:no match
+	 */
+	public int flush(int idle) {
+		synchronized (this) {
+			if (!capturing || idle < gapTime)
+				return -1;
+			int index = frameEnd();
+			afterGap = true;
+			return index;
+		}
+	}
+
+	/**
+	 * Check if a frame is in capture and waiting for its gap
+	 * 
+	 * @return true or false
+	 */
+	public boolean isCapturing() {
+		synchronized (this) {
+			return capturing;
+		}
+	}
+
+	/**
+	 * Learn the next frame, wait until a frame is captured
+	 * 
+	 * @param timeout
+	 *            max wait time, unit:ms[IN]
+	 * @return >=0:signature index learned, -1:timeout
+	 * @throws InterruptedException
+	 */
+	public int learn(long timeout) throws InterruptedException {
+		synchronized (this) {
+			long deadline = System.currentTimeMillis() + timeout;
+			learning = true;
+			learnedIndex = -1;
+			capturing = false;
+			afterGap = false;
+			try {
+				while (learning) {
+					long now = System.currentTimeMillis();
+					if (capturing && (now - lastFeedTime) * 1000 >= gapTime) {
+						frameEnd();
+						continue;
+					}
+					long timeLeft = deadline - now;
+					if (timeLeft <= 0)
+						break;
+					wait(timeLeft < 20 ? timeLeft : 20);
+				}
+			} finally {
+				learning = false;
+			}
+			return learnedIndex;
+		}
+	}
+
+	/**
+	 * Add a signature saved before
+	 * 
+	 * @param signature
+	 *            signature data[IN]
+	 * @return signature index
+	 */
+	public int addSignature(byte[] signature) {
+		if (signature.length <= SIG_HEADER || signature.length > SIG_HEADER + MAX_ITEMS)
+			throw new IllegalArgumentException("invalid signature.");
+		synchronized (this) {
+			int length = signature.length - SIG_HEADER;
+			System.arraycopy(signature, SIG_HEADER, encBuf, 0, length);
+			encBase = ((signature[0] & 0xff) << 8) | (signature[1] & 0xff);
+			int index = tabFind(length);
+			if (index >= 0)
+				return index;
+			return sigAdd(length);
+		}
+	}
+
+	/**
+	 * Gets the signature data, 2 bytes base unit(us) and 1 byte per
+	 * mark/space in base units
+	 * 
+	 * @param index
+	 *            signature index[IN]
+	 * @return signature data
+	 */
+	public byte[] getSignature(int index) {
+		synchronized (this) {
+			if (index < 0 || index >= sigCount)
+				throw new IllegalArgumentException("invalid index.");
+			byte[] signature = new byte[sigList[index].length];
+			System.arraycopy(sigList[index], 0, signature, 0, signature.length);
+			return signature;
+		}
+	}
+
+	/**
+	 * Gets the learned signature number
+	 * 
+	 * @return signature number
+	 */
+	public int getSignatureCount() {
+		synchronized (this) {
+			return sigCount;
+		}
+	}
+
+	/**
+	 * Append a mark/space to the captured frame
+	 * 
+	 * @param time
+	 *            length, unit:us[IN]
+	 * @return true:appended, false:overflow
+	 */
+	private boolean capAppend(int time) {
+		if (capCount >= MAX_ITEMS)
+			return false;
+		capTime[capCount++] = time;
+		return true;
+	}
+
+	/**
+	 * End the captured frame, save it as signature in learning mode or match
+	 * it with the signatures, the frame is encoded once
+	 * 
+	 * @return >=0:signature index matched, -1:no match or learning
+	 */
+	private int frameEnd() {
+		int index = -1;
+		if (capturing && !capIgnored && capCount > 0) {
+			if (learning) {
+				int length = encode();
+				index = tabFind(length);
+				learnedIndex = (index >= 0) ? index : sigAdd(length);
+				learning = false;
+				notifyAll();
+				index = -1;
+			} else if ((lengthSet[capCount >> 6] & (1L << (capCount & 63))) != 0) {
+				int length = encode();
+				index = tabFind(length);
+				if (index < 0)
+					index = sigNearest(length);
+			}
+		}
+		capturing = false;
+		return index;
+	}
+
+	/**
+	 * Quantize the captured frame into the frame buffer, the base unit is the
+	 * average of the shortest items
+	 * 
+	 * @return frame length
+	 */
+	private int encode() {
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < capCount; i++) {
+			if (capTime[i] < min)
+				min = capTime[i];
+		}
+		long sum = 0;
+		int count = 0;
+		for (int i = 0; i < capCount; i++) {
+			if (capTime[i] <= min + min / 2) {
+				sum += capTime[i];
+				count++;
+			}
+		}
+		int base = (int) (sum / count);
+		if (base <= 0)
+			base = 1;
+		for (int i = 0; i < capCount; i++) {
+			int time = capTime[i];
+			int q;
+			if (time < base * 7 / 2)
+				q = (time + base / 2) / base;
+			else
+				q = ((time + base * 2) / (base * 4)) * 4;
+			if (q < 1)
+				q = 1;
+			else if (q > 255)
+				q = 255;
+			encBuf[i] = (byte) q;
+		}
+		encBase = (base > 0xffff) ? 0xffff : base;
+		return capCount;
+	}
+
+	/**
+	 * Gets the hash of the frame buffer
+	 * 
+	 * @param length
+	 *            frame length[IN]
+	 * @return hash
+	 */
+	private int encHash(int length) {
+		int h = 0x811c9dc5 ^ length;
+		for (int i = 0; i < length; i++) {
+			h = (h ^ (encBuf[i] & 0xff)) * 0x01000193;
+		}
+		return h;
+	}
+
+	/**
+	 * Find the signature equal to the frame buffer
+	 * 
+	 * @param length
+	 *            frame length[IN]
+	 * @return signature index, -1:not found
+	 */
+	private int tabFind(int length) {
+		int hash = encHash(length);
+		int mask = tabIndex.length - 1;
+		int slot = hash & mask;
+		while (tabIndex[slot] >= 0) {
+			if (tabHash[slot] == hash && sigEquals(sigList[tabIndex[slot]], length))
+				return tabIndex[slot];
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Check if the signature equals the frame buffer
+	 * 
+	 * @param signature
+	 *            signature data[IN]
+	 * @param length
+	 *            frame length[IN]
+	 * @return true or false
+	 */
+	private boolean sigEquals(byte[] signature, int length) {
+		if (signature.length != SIG_HEADER + length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (signature[SIG_HEADER + i] != encBuf[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Find the signature of the same length nearest to the frame buffer, each
+	 * mark/space may differ by one unit from the signature
+	 * 
+	 * @param length
+	 *            frame length[IN]
+	 * @return signature index, -1:not found
+	 */
+	private int sigNearest(int length) {
+		int index = -1;
+		int best = Integer.MAX_VALUE;
+		for (int i = 0; i < sigCount; i++) {
+			byte[] signature = sigList[i];
+			if (signature.length != SIG_HEADER + length)
+				continue;
+			int diff = 0;
+			for (int j = 0; j < length && diff < best; j++) {
+				int d = (signature[SIG_HEADER + j] & 0xff) - (encBuf[j] & 0xff);
+				if (d > 1 || d < -1) {
+					diff = Integer.MAX_VALUE;
+					break;
+				}
+				diff += (d != 0) ? 1 : 0;
+			}
+			if (diff < best) {
+				best = diff;
+				index = i;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Save the frame buffer as a new signature
+	 * 
+	 * @param length
+	 *            frame length[IN]
+	 * @return signature index
+	 */
+	private int sigAdd(int length) {
+		byte[] signature = new byte[SIG_HEADER + length];
+		signature[0] = (byte) (encBase >> 8);
+		signature[1] = (byte) encBase;
+		System.arraycopy(encBuf, 0, signature, SIG_HEADER, length);
+		if (sigCount >= sigList.length) {
+			byte[][] list = new byte[sigList.length * 2][];
+			System.arraycopy(sigList, 0, list, 0, sigCount);
+			sigList = list;
+		}
+		int index = sigCount++;
+		sigList[index] = signature;
+		if (sigCount * 2 > tabIndex.length) {
+			tabHash = new int[tabIndex.length * 2];
+			tabIndex = new int[tabHash.length];
+			for (int i = 0; i < tabIndex.length; i++)
+				tabIndex[i] = -1;
+			for (int i = 0; i < sigCount; i++) {
+				int sigLength = sigList[i].length - SIG_HEADER;
+				System.arraycopy(sigList[i], SIG_HEADER, encBuf, 0, sigLength);
+				tabPut(encHash(sigLength), i);
+			}
+		} else {
+			tabPut(encHash(length), index);
+		}
+		lengthSet[length >> 6] |= 1L << (length & 63);
+		return index;
+	}
+
+	/**
+	 * Put a signature index into the hash table
+	 * 
+	 * @param hash
+	 *            signature hash[IN]
+	 * @param index
+	 *            signature index[IN]
+	 */
+	private void tabPut(int hash, int index) {
+		int mask = tabIndex.length - 1;
+		int slot = hash & mask;
+		while (tabIndex[slot] >= 0)
+			slot = (slot + 1) & mask;
+		tabHash[slot] = hash;
+		tabIndex[slot] = index;
+	}
+}
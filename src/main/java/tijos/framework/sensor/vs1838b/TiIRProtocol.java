@@ -0,0 +1,435 @@
+package tijos.framework.sensor.vs1838b;
+
+/**
+ * 
+ * IR protocol descriptor, the timing table and the field layout of a remote
+ * control protocol decoded by TiIRDecoder, unit:us
+ */
+public class TiIRProtocol {
+	/**
+	 * Pulse distance encoding, the bit value is in the space length(NEC)
+	 */
+	public static final int ENCODING_PULSE_DISTANCE = 0;
+	/**
+	 * Pulse width encoding, the bit value is in the mark length(SIRC)
+	 */
+	public static final int ENCODING_PULSE_WIDTH = 1;
+	/**
+	 * Bi-phase encoding, the bit value is in the transition
+	 * direction(RC5/RC6)
+	 */
+	public static final int ENCODING_BIPHASE = 2;
+
+	/**
+	 * Timing tolerance, percent
+	 */
+	private static final int TOLERANCE = 30;
+
+	/**
+	 * Timing table index of header mark
+	 */
+	static final int T_HEADER_MARK = 0;
+	/**
+	 * Timing table index of header space
+	 */
+	static final int T_HEADER_SPACE = 1;
+	/**
+	 * Timing table index of repeat space
+	 */
+	static final int T_REPEAT_SPACE = 2;
+	/**
+	 * Timing table index of mark of bit 0
+	 */
+	static final int T_MARK0 = 3;
+	/**
+	 * Timing table index of mark of bit 1
+	 */
+	static final int T_MARK1 = 4;
+	/**
+	 * Timing table index of space of bit 0
+	 */
+	static final int T_SPACE0 = 5;
+	/**
+	 * Timing table index of space of bit 1
+	 */
+	static final int T_SPACE1 = 6;
+
+	/**
+	 * No frame check
+	 */
+	static final int CHECK_NONE = 0;
+	/**
+	 * NEC check, inverted address and inverted command
+	 */
+	static final int CHECK_NEC = 1;
+	/**
+	 * Extended NEC check, inverted command
+	 */
+	static final int CHECK_NEC_EXT = 2;
+	/**
+	 * RC5 check, start bit, the field bit is the 7th command bit
+	 */
+	static final int CHECK_RC5 = 3;
+	/**
+	 * RC6 check, start bit and mode 0
+	 */
+	static final int CHECK_RC6 = 4;
+
+	/**
+	 * NEC, 8bits address, 8bits command
+	 */
+	public static final TiIRProtocol NEC = new TiIRProtocol("NEC", ENCODING_PULSE_DISTANCE, 9000, 4500, 2250, 560,
+			560, 560, 1690, 32, false, false, -1, 0, 8, 16, 8, -1, CHECK_NEC);
+	/**
+	 * Extended NEC, 16bits address, 8bits command
+	 */
+	public static final TiIRProtocol NEC_EXT = new TiIRProtocol("NEC-EXT", ENCODING_PULSE_DISTANCE, 9000, 4500, 2250,
+			560, 560, 560, 1690, 32, false, false, -1, 0, 16, 16, 8, -1, CHECK_NEC_EXT);
+	/**
+	 * Philips RC5, 5bits address, 7bits command
+	 */
+	public static final TiIRProtocol RC5 = new TiIRProtocol("RC5", ENCODING_BIPHASE, 0, 0, 0, 889, 889, 889, 889, 14,
+			true, false, -1, 6, 5, 0, 6, 11, CHECK_RC5);
+	/**
+	 * Philips RC6 mode 0, 8bits address, 8bits command
+	 */
+	public static final TiIRProtocol RC6 = new TiIRProtocol("RC6", ENCODING_BIPHASE, 2666, 889, 0, 444, 444, 444, 444,
+			21, true, true, 4, 8, 8, 0, 8, 16, CHECK_RC6);
+	/**
+	 * Sony SIRC 12bits, 5bits address, 7bits command
+	 */
+	public static final TiIRProtocol SIRC12 = new TiIRProtocol("SIRC12", ENCODING_PULSE_WIDTH, 2400, 600, 0, 600,
+			1200, 600, 600, 12, false, false, -1, 7, 5, 0, 7, -1, CHECK_NONE);
+	/**
+	 * Sony SIRC 15bits, 8bits address, 7bits command
+	 */
+	public static final TiIRProtocol SIRC15 = new TiIRProtocol("SIRC15", ENCODING_PULSE_WIDTH, 2400, 600, 0, 600,
+			1200, 600, 600, 15, false, false, -1, 7, 8, 0, 7, -1, CHECK_NONE);
+	/**
+	 * Sony SIRC 20bits, 13bits address(5bits device and 8bits extended),
+	 * 7bits command
+	 */
+	public static final TiIRProtocol SIRC20 = new TiIRProtocol("SIRC20", ENCODING_PULSE_WIDTH, 2400, 600, 0, 600,
+			1200, 600, 600, 20, false, false, -1, 7, 13, 0, 7, -1, CHECK_NONE);
+
+	/**
+	 * Protocol name
+	 */
+	final String name;
+	/**
+	 * Encoding type
+	 */
+	final int encoding;
+	/**
+	 * Header mark, 0:no header
+	 */
+	final int headerMark;
+	/**
+	 * Header space
+	 */
+	final int headerSpace;
+	/**
+	 * Repeat frame space after the header mark, 0:no repeat frame
+	 */
+	final int repeatSpace;
+	/**
+	 * Mark of bit 0, the half bit of bi-phase
+	 */
+	final int mark0;
+	/**
+	 * Mark of bit 1
+	 */
+	final int mark1;
+	/**
+	 * Space of bit 0
+	 */
+	final int space0;
+	/**
+	 * Space of bit 1
+	 */
+	final int space1;
+	/**
+	 * Bit number of a frame
+	 */
+	final int bits;
+	/**
+	 * Bit order, true:MSB first, false:LSB first
+	 */
+	final boolean msbFirst;
+	/**
+	 * Bi-phase bit 1 polarity, true:mark then space, false:space then mark
+	 */
+	final boolean markFirstOne;
+	/**
+	 * Bi-phase double width bit index, -1:none
+	 */
+	final int trailerBit;
+	/**
+	 * Address field shift
+	 */
+	final int addrShift;
+	/**
+	 * Address field bit number
+	 */
+	final int addrBits;
+	/**
+	 * Command field shift
+	 */
+	final int cmdShift;
+	/**
+	 * Command field bit number
+	 */
+	final int cmdBits;
+	/**
+	 * Toggle bit shift, -1:no toggle bit
+	 */
+	final int toggleShift;
+	/**
+	 * Frame check type
+	 */
+	final int check;
+	/**
+	 * Timing table lower bound
+	 */
+	final int[] timeLo;
+	/**
+	 * Timing table upper bound
+	 */
+	final int[] timeHi;
+	/**
+	 * Bi-phase unit number lower bound, index:unit number
+	 */
+	final int[] unitLo;
+	/**
+	 * Bi-phase unit number upper bound, index:unit number
+	 */
+	final int[] unitHi;
+	/**
+	 * Min space before a frame without header, or after a pulse width frame
+	 */
+	final int gapMin;
+	/**
+	 * Max unit number of a bi-phase mark or space
+	 */
+	final int maxUnits;
+	/**
+	 * Unit number of a bi-phase frame
+	 */
+	final int totalUnits;
+
+	/**
+	 * TiIRProtocol initialization
+	 */
+	private TiIRProtocol(String name, int encoding, int headerMark, int headerSpace, int repeatSpace, int mark0,
+			int mark1, int space0, int space1, int bits, boolean msbFirst, boolean markFirstOne, int trailerBit,
+			int addrShift, int addrBits, int cmdShift, int cmdBits, int toggleShift, int check) {
+		if (bits <= 0 || bits > 64)
+			throw new IllegalArgumentException("unsupported bits.");
+		if (encoding == ENCODING_BIPHASE && bits * 2 + (trailerBit >= 0 ? 2 : 0) > 64)
+			throw new IllegalArgumentException("unsupported bits.");
+		this.name = name;
+		this.encoding = encoding;
+		this.headerMark = headerMark;
+		this.headerSpace = headerSpace;
+		this.repeatSpace = repeatSpace;
+		this.mark0 = mark0;
+		this.mark1 = mark1;
+		this.space0 = space0;
+		this.space1 = space1;
+		this.bits = bits;
+		this.msbFirst = msbFirst;
+		this.markFirstOne = markFirstOne;
+		this.trailerBit = trailerBit;
+		this.addrShift = addrShift;
+		this.addrBits = addrBits;
+		this.cmdShift = cmdShift;
+		this.cmdBits = cmdBits;
+		this.toggleShift = toggleShift;
+		this.check = check;
+		this.gapMin = (headerMark > 0 && encoding != ENCODING_PULSE_WIDTH) ? 0 : mark0 * 5;
+		this.maxUnits = (trailerBit >= 0) ? 3 : 2;
+		this.totalUnits = bits * 2 + (trailerBit >= 0 ? 2 : 0);
+		int[] times = { headerMark, headerSpace, repeatSpace, mark0, mark1, space0, space1 };
+		timeLo = new int[times.length];
+		timeHi = new int[times.length];
+		for (int i = 0; i < times.length; i++) {
+			int tol = times[i] * TOLERANCE / 100;
+			timeLo[i] = (times[i] > 0) ? times[i] - tol : Integer.MAX_VALUE;
+			timeHi[i] = times[i] + tol;
+		}
+		unitLo = new int[maxUnits + 1];
+		unitHi = new int[maxUnits + 1];
+		int unitTol = mark0 * TOLERANCE / 100;
+		for (int n = 1; n <= maxUnits; n++) {
+			unitLo[n] = mark0 * n - unitTol;
+			unitHi[n] = mark0 * n + unitTol;
+		}
+	}
+
+	/**
+	 * Create a pulse distance protocol descriptor
+	 * 
+	 * @param name
+	 *            protocol name[IN]
+	 * @param headerMark
+	 *            header mark[IN]
+	 * @param headerSpace
+	 *            header space[IN]
+	 * @param repeatSpace
+	 *            repeat frame space, 0:no repeat frame[IN]
+	 * @param bitMark
+	 *            bit mark[IN]
+	 * @param zeroSpace
+	 *            space of bit 0[IN]
+	 * @param oneSpace
+	 *            space of bit 1[IN]
+	 * @param bits
+	 *            bit number, 1-64[IN]
+	 * @param msbFirst
+	 *            true:MSB first, false:LSB first[IN]
+	 * @param addrShift
+	 *            address field shift[IN]
+	 * @param addrBits
+	 *            address field bit number[IN]
+	 * @param cmdShift
+	 *            command field shift[IN]
+	 * @param cmdBits
+	 *            command field bit number[IN]
+	 * @return protocol descriptor
+	 */
+	public static TiIRProtocol pulseDistance(String name, int headerMark, int headerSpace, int repeatSpace,
+			int bitMark, int zeroSpace, int oneSpace, int bits, boolean msbFirst, int addrShift, int addrBits,
+			int cmdShift, int cmdBits) {
+		return new TiIRProtocol(name, ENCODING_PULSE_DISTANCE, headerMark, headerSpace, repeatSpace, bitMark, bitMark,
+				zeroSpace, oneSpace, bits, msbFirst, false, -1, addrShift, addrBits, cmdShift, cmdBits, -1,
+				CHECK_NONE);
+	}
+
+	/**
+	 * Create a pulse width protocol descriptor
+	 * 
+	 * @param name
+	 *            protocol name[IN]
+	 * @param headerMark
+	 *            header mark[IN]
+	 * @param headerSpace
+	 *            header space[IN]
+	 * @param zeroMark
+	 *            mark of bit 0[IN]
+	 * @param oneMark
+	 *            mark of bit 1[IN]
+	 * @param bitSpace
+	 *            bit space[IN]
+	 * @param bits
+	 *            bit number, 1-64[IN]
+	 * @param msbFirst
+	 *            true:MSB first, false:LSB first[IN]
+	 * @param addrShift
+	 *            address field shift[IN]
+	 * @param addrBits
+	 *            address field bit number[IN]
+	 * @param cmdShift
+	 *            command field shift[IN]
+	 * @param cmdBits
+	 *            command field bit number[IN]
+	 * @return protocol descriptor
+	 */
+	public static TiIRProtocol pulseWidth(String name, int headerMark, int headerSpace, int zeroMark, int oneMark,
+			int bitSpace, int bits, boolean msbFirst, int addrShift, int addrBits, int cmdShift, int cmdBits) {
+		return new TiIRProtocol(name, ENCODING_PULSE_WIDTH, headerMark, headerSpace, 0, zeroMark, oneMark, bitSpace,
+				bitSpace, bits, msbFirst, false, -1, addrShift, addrBits, cmdShift, cmdBits, -1, CHECK_NONE);
+	}
+
+	/**
+	 * Create a bi-phase protocol descriptor, MSB first
+	 * 
+	 * @param name
+	 *            protocol name[IN]
+	 * @param headerMark
+	 *            header mark, 0:no header[IN]
+	 * @param headerSpace
+	 *            header space[IN]
+	 * @param halfBit
+	 *            half bit time[IN]
+	 * @param markFirstOne
+	 *            bit 1 polarity, true:mark then space, false:space then
+	 *            mark[IN]
+	 * @param trailerBit
+	 *            double width bit index, -1:none[IN]
+	 * @param bits
+	 *            bit number[IN]
+	 * @param addrShift
+	 *            address field shift[IN]
+	 * @param addrBits
+	 *            address field bit number[IN]
+	 * @param cmdShift
+	 *            command field shift[IN]
+	 * @param cmdBits
+	 *            command field bit number[IN]
+	 * @param toggleShift
+	 *            toggle bit shift, -1:no toggle bit[IN]
+	 * @return protocol descriptor
+	 */
+	public static TiIRProtocol biphase(String name, int headerMark, int headerSpace, int halfBit,
+			boolean markFirstOne, int trailerBit, int bits, int addrShift, int addrBits, int cmdShift, int cmdBits,
+			int toggleShift) {
+		return new TiIRProtocol(name, ENCODING_BIPHASE, headerMark, headerSpace, 0, halfBit, halfBit, halfBit,
+				halfBit, bits, true, markFirstOne, trailerBit, addrShift, addrBits, cmdShift, cmdBits, toggleShift,
+				CHECK_NONE);
+	}
+
+	/**
+	 * Check if the time matches the timing table item within the tolerance
+	 * 
+	 * @param time
+	 *            measured time[IN]
+	 * @param item
+	 *            timing table index[IN]
+	 * @return true or false
+	 */
+	boolean match(int time, int item) {
+		return time >= timeLo[item] && time <= timeHi[item];
+	}
+
+	/**
+	 * Gets the bi-phase unit number of the time
+	 * 
+	 * @param time
+	 *            measured time[IN]
+	 * @return unit number, 0:no match
+	 */
+	int units(int time) {
+		for (int n = 1; n <= maxUnits; n++) {
+			if (time >= unitLo[n] && time <= unitHi[n])
+				return n;
+		}
+		return 0;
+	}
+
+	/**
+	 * Gets the protocol name
+	 * 
+	 * @return name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the encoding type
+	 * 
+	 * @return ENCODING_PULSE_DISTANCE, ENCODING_PULSE_WIDTH or ENCODING_BIPHASE
+	 */
+	public int getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Gets the bit number of a frame
+	 * 
+	 * @return bit number
+	 */
+	public int getBits() {
+		return bits;
+	}
+}
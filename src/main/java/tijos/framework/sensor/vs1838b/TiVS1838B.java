@@ -0,0 +1,346 @@
+package tijos.framework.sensor.vs1838b;
+
+import java.io.IOException;
+
+import tijos.framework.devicecenter.TiGPIO;
+import tijos.framework.eventcenter.ITiEvent;
+import tijos.framework.eventcenter.ITiEventListener;
+import tijos.framework.eventcenter.TiEventType;
+import tijos.framework.eventcenter.TiGPIOEvent;
+import tijos.framework.sensor.common.TiGPIOEventDispatcher;
+
+/**
+ * 
+ * VS1838B receiver with multiple protocols, both edges of the data pin are
+ * converted to mark/space lengths and decoded by TiIRDecoder
+ */
+public class TiVS1838B implements ITiEventListener {
+	/**
+	 * Queue tag of a learned signature matched
+	 */
+	private static final int TAG_SIGNATURE = -1;
+	/**
+	 * TiVS1838B pin id
+	 */
+	private int vs1838bPin;
+	/**
+	 * TiVS1838B data last time;
+	 */
+	private long vs1838bLastTime;
+	/**
+	 * TiVS1838B data last time of the system clock, unit:ms
+	 */
+	private long vs1838bLastMillis;
+	/**
+	 * TiIRDecoder object
+	 */
+	private TiIRDecoder decoderObj;
+	/**
+	 * TiIRLearner object, null:none
+	 */
+	private TiIRLearner learnerObj = null;
+	/**
+	 * TiVS1838B signature index delivered to the listener, -1:none
+	 */
+	private int sigIndex;
+	/**
+	 * TiVS1838B protocol index delivered to the listener, -1:none
+	 */
+	private int protoIndex;
+	/**
+	 * TiVS1838B address data delivered to the listener
+	 */
+	private int addrData;
+	/**
+	 * TiVS1838B command data delivered to the listener
+	 */
+	private int cmdData;
+	/**
+	 * TiVS1838B command time delivered to the listener, unit:us
+	 */
+	private long cmdTime;
+	/**
+	 * TiVS1838B decoded command queue
+	 */
+	private TiIRCommandQueue cmdQueue;
+	/**
+	 * TiVS1838B listener dispatch thread
+	 */
+	private Thread dispatchThread = null;
+	/**
+	 * TiGPIO object
+	 */
+	private TiGPIO gpioObj = null;
+	/**
+	 * Event listener
+	 */
+	private ITiVS1838BEventListener vs1838bLc = null;
+
+	@Override
+	public TiEventType getType() {
+		return TiEventType.GPIO;
+	}
+
+	@Override
+	public void onEvent(ITiEvent evt) {
+		synchronized (this) {
+			TiGPIOEvent eventObj = (TiGPIOEvent) evt;
+			if (eventObj.getPin() != vs1838bPin)
+				return;
+			long time = eventObj.getTime();
+			long delta = time - vs1838bLastTime;
+			vs1838bLastTime = time;
+			vs1838bLastMillis = System.currentTimeMillis();
+			int length = (delta > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) delta;
+			boolean decoded;
+			switch (eventObj.getEvent()) {
+			case TiGPIO.EVT_FALLINGEDGE:
+				decoded = decoderObj.feed(false, length);
+				break;
+			case TiGPIO.EVT_RISINGEDGE:
+				decoded = decoderObj.feed(true, length);
+				break;
+			default:
+				return;
+			}
+			if (decoded)
+				cmdQueue.offer(decoderObj.getAddress(), decoderObj.getCommand(), decoderObj.getProtocolIndex(),
+						decoderObj.isRepeat(), time);
+			if (learnerObj != null) {
+				int index = learnerObj.feed(eventObj.getEvent() == TiGPIO.EVT_RISINGEDGE, length);
+				if (index >= 0)
+					cmdQueue.offer(-1, index, TAG_SIGNATURE, false, time);
+			}
+		}
+	}
+
+	/**
+	 * Deliver the queued commands to the listener until the listener is
+	 * removed
+	 */
+	private void dispatchLoop() {
+		for (;;) {
+			ITiVS1838BEventListener lc;
+			int timeout;
+			synchronized (this) {
+				lc = vs1838bLc;
+				if (lc == null) {
+					dispatchThread = null;
+					return;
+				}
+				timeout = 1000;
+				if (decoderObj.isTrailing() || (learnerObj != null && learnerObj.isCapturing()))
+					timeout = 10;
+			}
+			try {
+				if (!cmdQueue.take(timeout)) {
+					frameFlush();
+					continue;
+				}
+			} catch (InterruptedException e) {
+				synchronized (this) {
+					dispatchThread = null;
+				}
+				return;
+			}
+			synchronized (this) {
+				if (cmdQueue.getTag() == TAG_SIGNATURE) {
+					protoIndex = -1;
+					sigIndex = cmdQueue.getCommand();
+					addrData = -1;
+					cmdData = -1;
+				} else {
+					protoIndex = cmdQueue.getTag();
+					sigIndex = -1;
+					addrData = cmdQueue.getAddress();
+					cmdData = cmdQueue.getCommand();
+				}
+				cmdTime = cmdQueue.getTime();
+			}
+			if (cmdQueue.isRepeat())
+				lc.cmdRepeat(this);
+			else
+				lc.cmdReceived(this);
+		}
+	}
+
+	/**
+	 * Complete the pulse width frame and the learner frame waiting for their
+	 * gap when the data pin is idle long enough, the last frame of a burst has
+	 * no following edge
+	 */
+	private void frameFlush() {
+		synchronized (this) {
+			long idle = (System.currentTimeMillis() - vs1838bLastMillis) * 1000;
+			int length = (idle > Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int) idle;
+			if (decoderObj.flush(length))
+				cmdQueue.offer(decoderObj.getAddress(), decoderObj.getCommand(), decoderObj.getProtocolIndex(),
+						decoderObj.isRepeat(), vs1838bLastTime);
+			if (learnerObj != null) {
+				int index = learnerObj.flush(length);
+				if (index >= 0)
+					cmdQueue.offer(-1, index, TAG_SIGNATURE, false, vs1838bLastTime);
+			}
+		}
+	}
+
+	/**
+	 * TiVS1838B initialization, default:NEC, extended NEC, RC5, RC6 and SIRC
+	 * 12/15/20bits
+	 * 
+	 * @param gpio
+	 *            TiGPIO object[IN]
+	 * @param dataPinID
+	 *            data pin id[IN]
+	 * @throws IOException
+	 */
+	public TiVS1838B(TiGPIO gpio, int dataPinID) throws IOException {
+		this(gpio, dataPinID, new TiIRProtocol[] { TiIRProtocol.NEC, TiIRProtocol.NEC_EXT, TiIRProtocol.RC5,
+				TiIRProtocol.RC6, TiIRProtocol.SIRC12, TiIRProtocol.SIRC15, TiIRProtocol.SIRC20 });
+	}
+
+	/**
+	 * TiVS1838B initialization
+	 * 
+	 * @param gpio
+	 *            TiGPIO object[IN]
+	 * @param dataPinID
+	 *            data pin id[IN]
+	 * @param protocols
+	 *            protocol descriptor list, in priority order[IN]
+	 * @throws IOException
+	 */
+	public TiVS1838B(TiGPIO gpio, int dataPinID, TiIRProtocol[] protocols) throws IOException {
+		gpio.setWorkMode(dataPinID, TiGPIO.INPUT_FLOATING);
+		gpioObj = gpio;
+		vs1838bPin = dataPinID;
+		decoderObj = new TiIRDecoder(protocols);
+		protoIndex = -1;
+		sigIndex = -1;
+		addrData = -1;
+		cmdData = -1;
+		cmdQueue = new TiIRCommandQueue(16);
+	}
+
+	/**
+	 * Set the TiVS1838B event listener,<br>
+	 * the decoded commands are queued and the listener is called from a
+	 * dispatch thread, not from the event thread
+	 * 
+	 * @param lc
+	 *            listener or null[IN]
+	 * @throws IOException
+	 */
+	public void setEventListener(ITiVS1838BEventListener lc) throws IOException {
+		synchronized (this) {
+			if (vs1838bLc == null && lc != null) {
+				gpioObj.setEventParameters(vs1838bPin, TiGPIO.EVT_BOTHEDGE, 100);// >=100us
+				TiGPIOEventDispatcher.getInstance().attach(vs1838bPin, this);
+				decoderObj.reset();
+				vs1838bLc = lc;
+				if (dispatchThread == null) {
+					dispatchThread = new Thread(new Runnable() {
+						public void run() {
+							dispatchLoop();
+						}
+					});
+					dispatchThread.start();
+				}
+			} else if (vs1838bLc != null && lc == null) {
+				gpioObj.setEventParameters(vs1838bPin, TiGPIO.EVT_NONE, 0);
+				TiGPIOEventDispatcher.getInstance().detach(vs1838bPin, this);
+				vs1838bLc = null;
+				cmdQueue.wakeup();
+			} else {
+			}
+		}
+		return;
+	}
+
+	/**
+	 * Set the TiIRLearner, the raw mark/space lengths are fed to the learner
+	 * and the learned signatures matched are delivered to cmdReceived with
+	 * getSignatureIndex() >= 0
+	 * 
+	 * @param learner
+	 *            TiIRLearner object or null[IN]
+	 */
+	public void setLearner(TiIRLearner learner) {
+		synchronized (this) {
+			learnerObj = learner;
+		}
+	}
+
+	/**
+	 * Gets the learned signature index received
+	 * 
+	 * @return >=0:signature index, <0:no signature
+	 */
+	public int getSignatureIndex() {
+		synchronized (this) {
+			return sigIndex;
+		}
+	}
+
+	/**
+	 * Gets the protocol received
+	 * 
+	 * @return protocol descriptor, null:no command or learned signature
+	 */
+	public TiIRProtocol getProtocol() {
+		synchronized (this) {
+			return (protoIndex < 0) ? null : decoderObj.getProtocol(protoIndex);
+		}
+	}
+
+	/**
+	 * Gets the address received
+	 * 
+	 * @return >=0:address, <0:no address
+	 */
+	public int getAddress() {
+		synchronized (this) {
+			return addrData;
+		}
+	}
+
+	/**
+	 * Gets the command received
+	 * 
+	 * @return >=0:command, <0:no command
+	 */
+	public int getCommand() {
+		synchronized (this) {
+			return cmdData;
+		}
+	}
+
+	/**
+	 * Gets the time of the command delivered to the listener
+	 * 
+	 * @return time value, unit:us
+	 */
+	public long getCommandTime() {
+		synchronized (this) {
+			return cmdTime;
+		}
+	}
+
+	/**
+	 * Gets the number of commands dropped because the listener is too slow
+	 * 
+	 * @return overflow count
+	 */
+	public int getOverflowCount() {
+		return cmdQueue.getOverflowCount();
+	}
+
+	/**
+	 * Gets the data pin id
+	 * 
+	 * @return pin id
+	 */
+	public int getDataPinID() {
+		return vs1838bPin;
+	}
+}
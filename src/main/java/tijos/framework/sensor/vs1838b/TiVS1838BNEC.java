@@ -5,9 +5,9 @@ import java.io.IOException;
 import tijos.framework.devicecenter.TiGPIO;
 import tijos.framework.eventcenter.ITiEvent;
 import tijos.framework.eventcenter.ITiEventListener;
-import tijos.framework.eventcenter.TiEventService;
 import tijos.framework.eventcenter.TiEventType;
 import tijos.framework.eventcenter.TiGPIOEvent;
+import tijos.framework.sensor.common.TiGPIOEventDispatcher;
 
 public class TiVS1838BNEC implements ITiEventListener {
 	/**
@@ -19,13 +19,33 @@ public class TiVS1838BNEC implements ITiEventListener {
 	 */
 	private long recvData;
 	/**
-	 * TiVS1838B address data
+	 * TiVS1838B address data delivered to the listener
 	 */
 	private int addrData;
 	/**
-	 * TiVS1838B command data
+	 * TiVS1838B command data delivered to the listener
 	 */
 	private int cmdData;
+	/**
+	 * TiVS1838B command time delivered to the listener, unit:us
+	 */
+	private long cmdTime;
+	/**
+	 * TiVS1838B last decoded address, -1:none
+	 */
+	private int lastAddr;
+	/**
+	 * TiVS1838B last decoded command, -1:none
+	 */
+	private int lastCmd;
+	/**
+	 * TiVS1838B decoded command queue
+	 */
+	private TiIRCommandQueue cmdQueue;
+	/**
+	 * TiVS1838B listener dispatch thread
+	 */
+	private Thread dispatchThread = null;
 	/**
 	 * TiVS1838B data count
 	 */
@@ -81,19 +101,18 @@ public class TiVS1838BNEC implements ITiEventListener {
 				case 1:
 					delta = time - vs1838bDelayTime;
 					if (delta > 12000 && delta <= 15000) {
-						addrData = -1;
-						cmdData = -1;
+						lastAddr = -1;
+						lastCmd = -1;
 						vs1838bCount = 0;
 						vs1838bStep = 2;
 						break;
 					}
 					if (delta > 9000 && delta <= 12000) {
 						if (vs1838bRestart) {
-							addrData = -1;
-							cmdData = -1;
-						} else if (addrData >= 0) {
-							if (vs1838bLc != null)
-								vs1838bLc.cmdRepeat(this);
+							lastAddr = -1;
+							lastCmd = -1;
+						} else if (lastAddr >= 0) {
+							cmdQueue.offer(lastAddr, lastCmd, 0, true, time);
 						}
 					}
 					vs1838bStep = 0;
@@ -115,10 +134,9 @@ public class TiVS1838BNEC implements ITiEventListener {
 						byte commandP = (byte) ((recvData >> 16) & 0xff);
 						byte commandN = (byte) ((recvData >> 24) & 0xff);
 						if (~commandN == commandP && ~addressN == addressP) {
-							addrData = addressP;
-							cmdData = commandP;
-							if (vs1838bLc != null)
-								vs1838bLc.cmdReceived(this);
+							lastAddr = addressP & 0xff;
+							lastCmd = commandP & 0xff;
+							cmdQueue.offer(lastAddr, lastCmd, 0, false, time);
 						}
 						vs1838bStep = 0;
 					}
@@ -144,11 +162,51 @@ public class TiVS1838BNEC implements ITiEventListener {
 		vs1838bPin = dataPinID;
 		addrData = -1;
 		cmdData = -1;
+		lastAddr = -1;
+		lastCmd = -1;
 		vs1838bStep = 0;
+		cmdQueue = new TiIRCommandQueue(16);
+	}
+
+	/**
+	 * Deliver the queued commands to the listener until the listener is
+	 * removed
+	 */
+	private void dispatchLoop() {
+		for (;;) {
+			ITiVS1838BNECEventListener lc;
+			synchronized (this) {
+				lc = vs1838bLc;
+				if (lc == null) {
+					dispatchThread = null;
+					return;
+				}
+			}
+			try {
+				if (!cmdQueue.take(1000))
+					continue;
+			} catch (InterruptedException e) {
+				synchronized (this) {
+					dispatchThread = null;
+				}
+				return;
+			}
+			synchronized (this) {
+				addrData = cmdQueue.getAddress();
+				cmdData = cmdQueue.getCommand();
+				cmdTime = cmdQueue.getTime();
+			}
+			if (cmdQueue.isRepeat())
+				lc.cmdRepeat(this);
+			else
+				lc.cmdReceived(this);
+		}
 	}
 
 	/**
-	 * Set the TiVS1838BNEC event listener
+	 * Set the TiVS1838BNEC event listener,<br>
+	 * the decoded commands are queued and the listener is called from a
+	 * dispatch thread, not from the event thread
 	 * 
 	 * @param lc
 	 *            listener or null[IN]
@@ -158,12 +216,21 @@ public class TiVS1838BNEC implements ITiEventListener {
 		synchronized (this) {
 			if (vs1838bLc == null && lc != null) {
 				gpioObj.setEventParameters(vs1838bPin, TiGPIO.EVT_FALLINGEDGE, 1000);// >=1ms
-				TiEventService.getInstance().addListener(this);
+				TiGPIOEventDispatcher.getInstance().attach(vs1838bPin, this);
 				vs1838bLc = lc;
+				if (dispatchThread == null) {
+					dispatchThread = new Thread(new Runnable() {
+						public void run() {
+							dispatchLoop();
+						}
+					});
+					dispatchThread.start();
+				}
 			} else if (vs1838bLc != null && lc == null) {
 				gpioObj.setEventParameters(vs1838bPin, TiGPIO.EVT_NONE, 0);
-				TiEventService.getInstance().unregisterEvent(this);
+				TiGPIOEventDispatcher.getInstance().detach(vs1838bPin, this);
 				vs1838bLc = null;
+				cmdQueue.wakeup();
 			} else {
 			}
 		}
@@ -192,6 +259,26 @@ public class TiVS1838BNEC implements ITiEventListener {
 		}
 	}
 
+	/**
+	 * Gets the time of the command delivered to the listener
+	 * 
+	 * @return time value, unit:us
+	 */
+	public long getCommandTime() {
+		synchronized (this) {
+			return cmdTime;
+		}
+	}
+
+	/**
+	 * Gets the number of commands dropped because the listener is too slow
+	 * 
+	 * @return overflow count
+	 */
+	public int getOverflowCount() {
+		return cmdQueue.getOverflowCount();
+	}
+
 	/**
 	 * Gets the data pin id
 	 * 
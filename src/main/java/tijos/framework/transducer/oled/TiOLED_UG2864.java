@@ -26,6 +26,18 @@ public class TiOLED_UG2864 {
 	 * Current column index
 	 */
 	private int currentColumnId;
+	/**
+	 * Frame buffer, 8 pages of 128 columns, null:direct mode
+	 */
+	private byte[] frameBuffer = null;
+	/**
+	 * First dirty column of each page, 128:clean
+	 */
+	private int[] dirtyLow;
+	/**
+	 * Last dirty column of each page, -1:clean
+	 */
+	private int[] dirtyHigh;
 
 	/**
 	 * Set Position
@@ -53,12 +65,45 @@ public class TiOLED_UG2864 {
 	 * @throws IOException
 	 */
 	private void oledWriteAsc16(int lineAsc, int columnAsc, byte[] dotMatrix) throws IOException {
+		if (frameBuffer != null) {
+			bufferWrite(lineAsc * 2, columnAsc * 8, dotMatrix, 0, 8);
+			bufferWrite(lineAsc * 2 + 1, columnAsc * 8, dotMatrix, 8, 8);
+			return;
+		}
 		oledSetPosition(lineAsc * 2, columnAsc * 8);
 		i2cmObj.write(oledAddress, 0x40, dotMatrix, 0, 8);
 		oledSetPosition(lineAsc * 2 + 1, columnAsc * 8);
 		i2cmObj.write(oledAddress, 0x40, dotMatrix, 8, 8);
 	}
 
+	/**
+	 * Write data to the frame buffer, only the changed columns are marked
+	 * dirty
+	 * 
+	 * @param page
+	 *            page index,range:0-7
+	 * @param column
+	 *            column index,range:0-127
+	 * @param data
+	 *            the data buffer
+	 * @param offset
+	 *            the data offset
+	 * @param length
+	 *            the data length
+	 */
+	private void bufferWrite(int page, int column, byte[] data, int offset, int length) {
+		int base = page * 128;
+		for (int i = 0; i < length; i++, column++) {
+			if (frameBuffer[base + column] == data[offset + i])
+				continue;
+			frameBuffer[base + column] = data[offset + i];
+			if (column < dirtyLow[page])
+				dirtyLow[page] = column;
+			if (column > dirtyHigh[page])
+				dirtyHigh[page] = column;
+		}
+	}
+
 	/**
 	 * TiOLED_UG2864 initialization
 	 * 
@@ -110,6 +155,13 @@ public class TiOLED_UG2864 {
 	public void clear() throws IOException {
 		synchronized (i2cmObj) {
 			byte[] fillBuffer = new byte[128];
+			if (frameBuffer != null) {
+				for (int i = 0; i < 8; i++)
+					bufferWrite(i, 0, fillBuffer, 0, fillBuffer.length);
+				currentLineId = 0;
+				currentColumnId = 0;
+				return;
+			}
 			for (int i = 0; i < 8; i++) {
 				oledSetPosition(i, 0);
 				i2cmObj.write(oledAddress, 0x40, fillBuffer, 0, fillBuffer.length);
@@ -119,6 +171,56 @@ public class TiOLED_UG2864 {
 		}
 	}
 
+	/**
+	 * Set the buffered mode,<br>
+	 * clear, print and output write to a 128x64 frame buffer and the changed
+	 * column spans of each page are sent by flush,<br>
+	 * the whole buffer is sent by the first flush after enabled
+	 * 
+	 * @param enable
+	 *            true:buffered mode, false:direct mode[IN]
+	 * @throws IOException
+	 */
+	public void setBufferedMode(boolean enable) throws IOException {
+		synchronized (i2cmObj) {
+			if (enable && frameBuffer == null) {
+				frameBuffer = new byte[1024];
+				dirtyLow = new int[8];
+				dirtyHigh = new int[8];
+				for (int i = 0; i < 8; i++) {
+					dirtyLow[i] = 0;
+					dirtyHigh[i] = 127;
+				}
+			} else if (!enable && frameBuffer != null) {
+				flush();
+				frameBuffer = null;
+				dirtyLow = null;
+				dirtyHigh = null;
+			} else {
+			}
+		}
+	}
+
+	/**
+	 * Send the changed column spans of the frame buffer, one span per page
+	 * 
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		synchronized (i2cmObj) {
+			if (frameBuffer == null)
+				return;
+			for (int i = 0; i < 8; i++) {
+				if (dirtyHigh[i] < dirtyLow[i])
+					continue;
+				oledSetPosition(i, dirtyLow[i]);
+				i2cmObj.write(oledAddress, 0x40, frameBuffer, i * 128 + dirtyLow[i], dirtyHigh[i] - dirtyLow[i] + 1);
+				dirtyLow[i] = 128;
+				dirtyHigh[i] = -1;
+			}
+		}
+	}
+
 	/**
 	 * Print string text,<br>
 	 * position automatic movement,<br>